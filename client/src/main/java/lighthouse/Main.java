@@ -28,6 +28,7 @@ import lighthouse.controls.NotificationBarPane;
 import lighthouse.files.AppDirectory;
 import lighthouse.protocol.LHUtils;
 import lighthouse.subwindows.EmbeddedWindow;
+import lighthouse.utils.CoverImageCache;
 import lighthouse.utils.GuiUtils;
 import lighthouse.utils.TextFieldValidator;
 import lighthouse.wallet.PledgingWallet;
@@ -81,6 +82,7 @@ public class Main extends Application {
     public static Main instance;
     public static String demoName;
     public static LighthouseBackend backend;
+    public static final CoverImageCache coverImages = new CoverImageCache();
 
     private StackPane uiStack;
     private Pane mainUI;
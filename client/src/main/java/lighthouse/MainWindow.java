@@ -15,11 +15,12 @@ import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.collections.ListChangeListener;
-import javafx.collections.MapChangeListener;
 import javafx.collections.ObservableList;
 import javafx.collections.ObservableMap;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
+import javafx.geometry.Bounds;
+import javafx.scene.Node;
 import javafx.scene.control.*;
 import javafx.scene.input.DragEvent;
 import javafx.scene.input.MouseEvent;
@@ -40,6 +41,7 @@ import lighthouse.subwindows.SendMoneyController;
 import lighthouse.subwindows.UpdateFXWindow;
 import lighthouse.subwindows.WalletSettingsController;
 import lighthouse.utils.GuiUtils;
+import lighthouse.utils.KeyedMapDispatcher;
 import lighthouse.utils.easing.EasingMode;
 import lighthouse.utils.easing.ElasticInterpolator;
 import org.bitcoinj.core.Coin;
@@ -51,6 +53,7 @@ import org.fxmisc.easybind.EasyBind;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
@@ -95,6 +98,8 @@ public class MainWindow {
     // A map indicating the status of checking each project against the network (downloading, found an error, done, etc)
     // This is mirrored into the UI thread from the backend.
     private ObservableMap<Project, LighthouseBackend.CheckStatus> checkStates;
+    private KeyedMapDispatcher<String, LighthouseBackend.ProjectStateInfo> projectStateDispatcher;
+    private KeyedMapDispatcher<Project, LighthouseBackend.CheckStatus> checkStateDispatcher;
 
     private SimpleBooleanProperty inProjectView = new SimpleBooleanProperty();
 
@@ -136,9 +141,17 @@ public class MainWindow {
         projects = Main.backend.mirrorProjects(UI_THREAD);
         projectStates = Main.backend.mirrorProjectStates(UI_THREAD);
         checkStates = Main.backend.mirrorCheckStatuses(UI_THREAD);
+        projectStateDispatcher = new KeyedMapDispatcher<>(projectStates);
+        checkStateDispatcher = new KeyedMapDispatcher<>(checkStates);
         for (Project project : projects) {
-            projectsVBox.getChildren().add(0, buildProjectWidget(project));
+            projectsVBox.getChildren().add(0, new ProjectSlot(project));
         }
+        // Build and throw away project widgets as they come in and out of view.
+        InvalidationListener slotUpdater = x -> requestSlotUpdate();
+        contentScrollPane.vvalueProperty().addListener(slotUpdater);
+        contentScrollPane.viewportBoundsProperty().addListener(slotUpdater);
+        projectsVBox.heightProperty().addListener(slotUpdater);
+        projectsVBox.sceneProperty().addListener(slotUpdater);
         projects.addListener((ListChangeListener<Project>) change -> {
             while (change.next()) {
                 if (change.wasAdded()) {
@@ -183,7 +196,8 @@ public class MainWindow {
             scrollToTop().setOnFinished(ev -> slideInNewProject(project));
             return;
         }
-        ProjectOverviewWidget projectWidget = buildProjectWidget(project);
+        ProjectSlot projectWidget = new ProjectSlot(project);
+        projectWidget.materialise();
 
         // Hack: Add at the end for the size calculation, then we'll move it to the start after the next frame.
         projectWidget.setVisible(false);
@@ -207,17 +221,76 @@ public class MainWindow {
         });
     }
 
+    // Stands in for a project in the overview. The real widget is only built when the slot comes near the visible part
+    // of the scroll pane, and is thrown away again once it's far out of view, so startup time and memory don't grow
+    // with the number of projects. An empty slot keeps the height of the last widget so scrolling doesn't jump about.
+    private class ProjectSlot extends StackPane {
+        private final Project project;
+        @Nullable private ProjectOverviewWidget widget;
+
+        ProjectSlot(Project project) {
+            this.project = project;
+            setMinHeight(estimatedWidgetHeight);
+        }
+
+        void materialise() {
+            if (widget != null) return;
+            widget = buildProjectWidget(project);
+            getChildren().add(widget);
+            setMinHeight(USE_COMPUTED_SIZE);
+        }
+
+        void dematerialise() {
+            if (widget == null) return;
+            setMinHeight(getHeight());
+            getChildren().clear();
+            widget = null;
+        }
+    }
+
+    private double estimatedWidgetHeight = 360;
+    private boolean slotUpdatePending;
+
+    private void requestSlotUpdate() {
+        if (slotUpdatePending) return;
+        slotUpdatePending = true;
+        // Wait for layout to settle, as lots of things can change at once whilst scrolling or resizing.
+        Platform.runLater(() -> {
+            slotUpdatePending = false;
+            updateSlots();
+        });
+    }
+
+    private void updateSlots() {
+        if (projectsVBox.getScene() == null) return;   // In the project view.
+        Bounds viewport = contentScrollPane.localToScene(contentScrollPane.getLayoutBounds());
+        // Build widgets a screen ahead so they're ready by the time they scroll into view.
+        final double margin = viewport.getHeight();
+        for (Node node : projectsVBox.getChildren()) {
+            if (!(node instanceof ProjectSlot)) continue;
+            ProjectSlot slot = (ProjectSlot) node;
+            if (slot.getHeight() == 0) continue;   // Not laid out yet.
+            Bounds bounds = slot.localToScene(slot.getLayoutBounds());
+            if (bounds.getMaxY() >= viewport.getMinY() - margin && bounds.getMinY() <= viewport.getMaxY() + margin) {
+                if (slot.widget != null)
+                    estimatedWidgetHeight = slot.getHeight();
+                slot.materialise();
+            } else if (bounds.getMaxY() < viewport.getMinY() - margin * 3 || bounds.getMinY() > viewport.getMaxY() + margin * 3) {
+                slot.dematerialise();
+            }
+        }
+    }
+
     private ProjectOverviewWidget buildProjectWidget(Project project) {
         SimpleObjectProperty<LighthouseBackend.ProjectState> state = new SimpleObjectProperty<>(getProjectState(project));
-        projectStates.addListener((javafx.beans.InvalidationListener) x -> state.set(getProjectState(project)));
+        // Widgets get built whilst scrolling, so don't stall the UI thread waiting for the backend to mirror pledges.
         ProjectOverviewWidget projectWidget = new ProjectOverviewWidget(project,
-                Main.backend.makeTotalPledgedProperty(project, UI_THREAD),
+                Main.backend.makeTotalPledgedPropertyAsync(project, UI_THREAD),
                 state);
-        projectWidget.onCheckStatusChanged(checkStates.get(project));
-        checkStates.addListener((MapChangeListener<Project, LighthouseBackend.CheckStatus>) change -> {
-            if (change.getKey().equals(project))
-                projectWidget.onCheckStatusChanged(change.wasAdded() ? change.getValueAdded() : null);
-        });
+        // Only this project's changes are routed to the widget, and the subscriptions go away along with it.
+        projectStateDispatcher.subscribe(project.getID(), projectWidget,
+                (widget, info) -> state.set(info == null ? LighthouseBackend.ProjectState.OPEN : info.state));
+        checkStateDispatcher.subscribe(project, projectWidget, ProjectOverviewWidget::onCheckStatusChanged);
         projectWidget.addEventHandler(MouseEvent.MOUSE_CLICKED, event -> switchToProject(project));
         return projectWidget;
     }
@@ -15,7 +15,6 @@ import javafx.scene.control.ProgressIndicator;
 import javafx.scene.control.Tooltip;
 import javafx.scene.effect.ColorAdjust;
 import javafx.scene.effect.GaussianBlur;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.DragEvent;
 import javafx.scene.input.MouseEvent;
@@ -27,6 +26,7 @@ import javafx.scene.text.Text;
 import javafx.scene.text.TextFlow;
 import lighthouse.LighthouseBackend;
 import lighthouse.Main;
+import lighthouse.protocol.LHProtos;
 import lighthouse.protocol.Project;
 import lighthouse.subwindows.ExportWindow;
 import lighthouse.utils.GuiUtils;
@@ -36,6 +36,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.util.concurrent.CompletableFuture;
 
 import static javafx.beans.binding.Bindings.*;
 import static lighthouse.protocol.LHUtils.uncheck;
@@ -80,7 +81,6 @@ public class ProjectOverviewWidget extends HBox {
         isLoading = new SimpleBooleanProperty();
 
         // Make the cover image go grey when claimed and blurred when loading. Make a loading indicator fade in/out.
-        final Image image = new Image(project.getCoverImage().newInput());
         ColorAdjust colorAdjust = new ColorAdjust();
         colorAdjust.saturationProperty().bind(when(equal(state, LighthouseBackend.ProjectState.CLAIMED)).then(-0.9).otherwise(0.0));
         if (GuiUtils.isSoftwarePipeline()) {
@@ -92,7 +92,8 @@ public class ProjectOverviewWidget extends HBox {
             animatedBind(coverImage, blur.radiusProperty(), when(isLoading).then(25).otherwise(0.0));
             coverImage.setEffect(blur);
         }
-        coverImage.setImage(image);
+        // Decoded in the background at the size we show it at, as there can be a lot of these.
+        Main.coverImages.get(project, (int) coverImage.getFitWidth(), (int) coverImage.getFitHeight(), coverImage::setImage);
         coverImage.setClip(new Rectangle(coverImage.getFitWidth(), coverImage.getFitHeight()));
 
 
@@ -128,11 +129,20 @@ public class ProjectOverviewWidget extends HBox {
     }
 
     private ExportWindow.DragData dragData;
+    @Nullable private CompletableFuture<LHProtos.Project> proto;
+
+    @FXML
+    public void mousePressed(MouseEvent event) {
+        // Might be the start of a drag, which needs the project ready by the time it's detected.
+        proto = ExportWindow.readProto(project);
+    }
 
     @FXML
     public void dragDetected(MouseEvent event) {
-        dragData = ExportWindow.startDrag(project.getSuggestedFileName(), project.getProto(),
-                ExportWindow.PROJECT_MIME_TYPE, this);
+        LHProtos.Project data = proto == null ? null : ExportWindow.getIfRead(proto);
+        if (data == null)
+            return;
+        dragData = ExportWindow.startDrag(project.getSuggestedFileName(), data, ExportWindow.PROJECT_MIME_TYPE, this);
     }
 
     @FXML
@@ -1,6 +1,5 @@
 package lighthouse.controls;
 
-import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import javafx.animation.KeyFrame;
 import javafx.animation.KeyValue;
@@ -13,7 +12,6 @@ import javafx.beans.property.LongProperty;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.collections.*;
-import javafx.collections.transformation.SortedList;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
@@ -24,7 +22,6 @@ import javafx.scene.control.Label;
 import javafx.scene.control.ListCell;
 import javafx.scene.control.ListView;
 import javafx.scene.effect.ColorAdjust;
-import javafx.scene.image.Image;
 import javafx.scene.input.KeyCombination;
 import javafx.scene.layout.*;
 import javafx.scene.text.Text;
@@ -40,7 +37,7 @@ import lighthouse.subwindows.RevokeAndClaimWindow;
 import lighthouse.threading.AffinityExecutor;
 import lighthouse.utils.ConcatenatingList;
 import lighthouse.utils.GuiUtils;
-import lighthouse.utils.MappedList;
+import lighthouse.utils.TopValues;
 import org.bitcoinj.core.Coin;
 import org.bitcoinj.core.Sha256Hash;
 import org.bitcoinj.params.TestNet3Params;
@@ -51,14 +48,16 @@ import javax.annotation.Nullable;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.time.Instant;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.List;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static javafx.beans.binding.Bindings.*;
 import static javafx.collections.FXCollections.singletonObservableList;
 import static lighthouse.utils.GuiUtils.getResource;
-import static lighthouse.utils.MoreBindings.bindSetToList;
+import static lighthouse.utils.MoreBindings.bindSetToSortedList;
 import static lighthouse.utils.MoreBindings.mergeSets;
 
 /**
@@ -69,6 +68,12 @@ public class ProjectView extends HBox {
 
     private static final String BLOCK_EXPLORER_SITE = "https://www.biteasy.com/blockchain/transactions/%s";
     private static final String BLOCK_EXPLORER_SITE_TESTNET = "https://www.biteasy.com/testnet/transactions/%s";
+    // Cover images look best at 650:200 and the window can be made much wider than that, so decode at twice the size.
+    private static final int COVER_IMAGE_WIDTH = 1300;
+    // The largest pledges get a pie slice each and the rest share one, so big projects don't create thousands of nodes.
+    private static final int MAX_PLEDGE_SLICES = 12;
+    private static final Comparator<LHProtos.Pledge> BY_TIME = Comparator.<LHProtos.Pledge>comparingLong(
+            LHProtos.Pledge::getTimestamp).thenComparing(LHUtils::pledgeHash);
 
     @FXML Label projectTitle;
     @FXML Label goalAmountLabel;
@@ -116,7 +121,10 @@ public class ProjectView extends HBox {
     // Holds together various bindings so we can disconnect them when we switch projects.
     private class UIBindings {
         private final ObservableList<LHProtos.Pledge> sortedByTime;
+        private final TopValues<LHProtos.Pledge> largestPledges;
+        private final ObservableList<PieChart.Data> pledgeSlices;
         private final ConcatenatingList<PieChart.Data> slices;
+        private boolean slicesUpdatePending;
 
         public UIBindings() {
             // Bind the project pledges from the backend to the UI components so they react appropriately.
@@ -148,15 +156,24 @@ public class ProjectView extends HBox {
             pledgedValue.addListener(o -> pledgedValueChanged(goalAmount, pledgedValue));
             pledgedValueChanged(goalAmount, pledgedValue);
 
-            //    - Put pledges into the list view.
-            ObservableList<LHProtos.Pledge> list1 = FXCollections.observableArrayList();
-            bindSetToList(pledges, list1);
-            sortedByTime = new SortedList<>(list1, (o1, o2) -> Long.compareUnsigned(o1.getTimestamp(), o2.getTimestamp()));
-            bindContent(pledgesList.getItems(), sortedByTime);
-
-            //    - Convert pledges into pie slices.
-            MappedList<PieChart.Data, LHProtos.Pledge> pledgeSlices = new MappedList<>(sortedByTime,
-                    pledge -> new PieChart.Data("", pledge.getTotalInputValue()));
+            //    - Put pledges into the list view. It only creates cells for the visible rows, so we just have to
+            //      avoid re-sorting the whole list every time a pledge arrives.
+            sortedByTime = FXCollections.observableArrayList();
+            bindSetToSortedList(pledges, sortedByTime, BY_TIME);
+            pledgesList.setItems(sortedByTime);
+
+            //    - Convert the largest pledges into pie slices, and lump the rest together.
+            largestPledges = new TopValues<>(MAX_PLEDGE_SLICES, LHProtos.Pledge::getTotalInputValue, BY_TIME);
+            pledges.forEach(largestPledges::add);
+            pledgeSlices = FXCollections.observableArrayList();
+            updateSlices();
+            pledges.addListener((SetChangeListener<? super LHProtos.Pledge>) change -> {
+                if (change.wasAdded())
+                    largestPledges.add(change.getElementAdded());
+                else
+                    largestPledges.remove(change.getElementRemoved());
+                requestSlicesUpdate();
+            });
 
             //    - Stick an invisible padding slice on the end so we can see through the unpledged part.
             slices = new ConcatenatingList<>(pledgeSlices, singletonObservableList(emptySlice));
@@ -165,10 +182,35 @@ public class ProjectView extends HBox {
             bindContent(pieChart.getData(), slices);
         }
 
+        // Pledges tend to arrive in bursts, so only touch the chart once per burst.
+        private void requestSlicesUpdate() {
+            if (slicesUpdatePending)
+                return;
+            slicesUpdatePending = true;
+            Platform.runLater(() -> {
+                slicesUpdatePending = false;
+                if (bindings == this)
+                    updateSlices();
+            });
+        }
+
+        private void updateSlices() {
+            List<LHProtos.Pledge> top = largestPledges.getTop();
+            int wanted = top.size() + (largestPledges.getOthersCount() > 0 ? 1 : 0);
+            if (pledgeSlices.size() > wanted)
+                pledgeSlices.remove(wanted, pledgeSlices.size());
+            while (pledgeSlices.size() < wanted)
+                pledgeSlices.add(new PieChart.Data("", 0));
+            for (int i = 0; i < top.size(); i++)
+                pledgeSlices.get(i).setPieValue(top.get(i).getTotalInputValue());
+            if (wanted > top.size())
+                pledgeSlices.get(top.size()).setPieValue(largestPledges.getOthersTotal());
+        }
+
         public void unbind() {
             numPledgersLabel.textProperty().unbind();
             percentFundedLabel.textProperty().unbind();
-            unbindContent(pledgesList.getItems(), sortedByTime);
+            pledgesList.setItems(FXCollections.observableArrayList());
             unbindContent(pieChart.getData(), slices);
         }
     }
@@ -208,16 +250,15 @@ public class ProjectView extends HBox {
 
         description.getChildren().setAll(new Text(project.get().getMemo()));
 
-        noPledgesLabel.visibleProperty().bind(isEmpty(pledgesList.getItems()));
-
-        // Load and set up the cover image.
-        Image img = new Image(p.getCoverImage().newInput());
-        if (img.getException() != null)
-            Throwables.propagate(img.getException());
-        BackgroundSize cover = new BackgroundSize(BackgroundSize.AUTO, BackgroundSize.AUTO, false, false, false, true);
-        BackgroundImage bimg = new BackgroundImage(img, BackgroundRepeat.NO_REPEAT, BackgroundRepeat.NO_REPEAT,
-                BackgroundPosition.DEFAULT, cover);
-        coverImage.setBackground(new Background(bimg));
+        // Load and set up the cover image. It's decoded in the background, by which time the user may have moved on.
+        coverImage.setBackground(null);
+        Main.coverImages.get(p, COVER_IMAGE_WIDTH, 0, img -> {
+            if (project.get() != p) return;
+            BackgroundSize cover = new BackgroundSize(BackgroundSize.AUTO, BackgroundSize.AUTO, false, false, false, true);
+            BackgroundImage bimg = new BackgroundImage(img, BackgroundRepeat.NO_REPEAT, BackgroundRepeat.NO_REPEAT,
+                    BackgroundPosition.DEFAULT, cover);
+            coverImage.setBackground(new Background(bimg));
+        });
 
         // Configure the pie chart.
         emptySlice = new PieChart.Data("", 0);
@@ -225,6 +266,7 @@ public class ProjectView extends HBox {
         if (bindings != null)
             bindings.unbind();
         bindings = new UIBindings();
+        noPledgesLabel.visibleProperty().bind(isEmpty(pledgesList.getItems()));
 
         // This must be done after the binding because otherwise it has no node in the scene graph yet.
         emptySlice.getNode().setVisible(false);
@@ -5,6 +5,8 @@ import com.google.protobuf.Message;
 import javafx.application.Platform;
 import lighthouse.Main;
 import lighthouse.files.DiskManager;
+import lighthouse.protocol.Ex;
+import lighthouse.protocol.LHProtos;
 import lighthouse.protocol.Project;
 import lighthouse.utils.GuiUtils;
 import lighthouse.wallet.PledgingWallet;
@@ -27,6 +29,8 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class ExportWindow {
     private static final Logger log = LoggerFactory.getLogger(ExportWindow.class);
@@ -38,6 +42,7 @@ public class ExportWindow {
 
     private Project project;
     @Nullable private PledgingWallet.PendingPledge pledge;
+    @Nullable private CompletableFuture<LHProtos.Project> projectProto;
 
     public void initialize() {
         // TODO: Make a composite icon that looks more pledgey.
@@ -56,6 +61,7 @@ public class ExportWindow {
         log.info("Open ExportWindow for saving project '{}'", project.getTitle());
         ExportWindow window = Main.instance.<ExportWindow>overlayUI("subwindows/export.fxml", "Export project").controller;
         window.project = project;
+        window.projectProto = readProto(project);
     }
 
     public static DataFormat PLEDGE_MIME_TYPE = new DataFormat("application/vnd.vinumeris.lighthouse-pledge");
@@ -89,11 +95,40 @@ public class ExportWindow {
         // after the drag operation has finished.
         final String fileName = getFileName();
         boolean savingPledge = pledge != null;
-        Message data = savingPledge ? pledge.getData() : project.getProto();
+        Message data = savingPledge ? pledge.getData() : getIfRead(projectProto);
+        if (data == null)
+            return;
         final DataFormat mimeType = savingPledge ? PLEDGE_MIME_TYPE : PROJECT_MIME_TYPE;
         dragData = startDrag(fileName, data, mimeType, dragArea);
     }
 
+    /**
+     * Starts serializing the project on a background thread, as that may mean reading it back from disk. A drag has to
+     * be started from within its event handler, so this must be called before one could begin. Pass the result to
+     * {@link #getIfRead(CompletableFuture)} when it does.
+     */
+    public static CompletableFuture<LHProtos.Project> readProto(Project project) {
+        return CompletableFuture.supplyAsync(project::getProto);
+    }
+
+    /**
+     * Returns the project started by {@link #readProto(Project)}, or null if it isn't ready yet or couldn't be read. In
+     * the latter case the user is told why.
+     */
+    @Nullable
+    public static LHProtos.Project getIfRead(CompletableFuture<LHProtos.Project> proto) {
+        if (!proto.isDone()) {
+            log.info("Project is still being read, ignoring drag");
+            return null;
+        }
+        try {
+            return proto.getNow(null);
+        } catch (CompletionException e) {
+            GuiUtils.informationalAlert("Failed to save file", e.getCause().getLocalizedMessage());
+            return null;
+        }
+    }
+
     public static DragData startDrag(String fileName, Message data, DataFormat mimeType, Node dragArea) {
         try {
             DragData dd = new DragData();
@@ -148,7 +183,13 @@ public class ExportWindow {
                 log.info(" ... but user cancelled");
                 return;
             }
-            Message data = savingPledge ? pledge.getData() : project.getProto();
+            final Message data;
+            try {
+                data = savingPledge ? pledge.getData() : project.getProto();
+            } catch (Ex.ProjectReloadFailed e) {
+                GuiUtils.informationalAlert("Failed to save file", e.getLocalizedMessage());
+                return;
+            }
             log.info("Saving {} data to {}", pledge != null ? "pledge" : "project", file);
             try (OutputStream outputStream = new FileOutputStream(file)) {
                 data.writeTo(outputStream);
@@ -0,0 +1,105 @@
+package lighthouse.utils;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.protobuf.ByteString;
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import lighthouse.protocol.Ex;
+import lighthouse.protocol.Project;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Decodes project cover images on background threads, scaled down to the size they're going to be shown at, and
+ * keeps the most recently used ones around up to a memory budget. This keeps JPEG decoding off the UI thread when
+ * lots of project widgets get created, or when the user flips between projects.
+ */
+public class CoverImageCache {
+    private static final Logger log = LoggerFactory.getLogger(CoverImageCache.class);
+
+    public static final long DEFAULT_BUDGET_BYTES = 64 * 1024 * 1024;
+
+    private final Cache<String, Image> images;
+    private final ExecutorService decoders;
+    // Callbacks waiting for an image that is being decoded right now, so asking again doesn't decode it twice. Only
+    // touched on the UI thread.
+    private final Map<String, List<Consumer<Image>>> pending = new HashMap<>();
+
+    public CoverImageCache() {
+        this(DEFAULT_BUDGET_BYTES, Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    public CoverImageCache(long budgetBytes, int threads) {
+        // Decoded images take four bytes per pixel.
+        images = CacheBuilder.newBuilder()
+                .maximumWeight(budgetBytes)
+                .<String, Image>weigher((key, image) -> (int) (image.getWidth() * image.getHeight() * 4))
+                .build();
+        decoders = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("Cover image decoder %d").build());
+    }
+
+    /**
+     * Calls the given callback on the UI thread with the cover image of the project, scaled to fit the given size
+     * without preserving the aspect ratio. A height of zero means the height is picked to keep the aspect ratio. If the
+     * image was decoded before the callback runs immediately, otherwise once decoding is done. Requests for an image that
+     * is already being decoded wait for that decode. Nothing happens if the image can't be decoded.
+     */
+    public void get(Project project, int width, int height, Consumer<Image> callback) {
+        checkState(Platform.isFxApplicationThread());
+        final String key = String.format("%s/%dx%d", project.getID(), width, height);
+        Image image = images.getIfPresent(key);
+        if (image != null) {
+            callback.accept(image);
+            return;
+        }
+        List<Consumer<Image>> waiting = pending.get(key);
+        if (waiting != null) {
+            waiting.add(callback);
+            return;
+        }
+        waiting = new ArrayList<>();
+        waiting.add(callback);
+        pending.put(key, waiting);
+        decoders.execute(() -> {
+            Image decoded = decode(project, width, height);
+            if (decoded != null)
+                images.put(key, decoded);
+            Platform.runLater(() -> {
+                List<Consumer<Image>> callbacks = pending.remove(key);
+                if (decoded != null)
+                    callbacks.forEach(c -> c.accept(decoded));
+            });
+        });
+    }
+
+    @Nullable
+    private static Image decode(Project project, int width, int height) {
+        ByteString bits;
+        try {
+            bits = project.getCoverImage();
+        } catch (Ex.ProjectReloadFailed e) {
+            log.error("Could not load cover image for {}: {}", project, e.getMessage());
+            return null;
+        }
+        Image decoded = new Image(bits.newInput(), width, height, height == 0, true);
+        if (decoded.isError()) {
+            log.error("Could not decode cover image for {}", project, decoded.getException());
+            return null;
+        }
+        return decoded;
+    }
+}
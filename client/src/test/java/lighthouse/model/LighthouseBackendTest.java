@@ -12,6 +12,7 @@ import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.protobuf.ByteString;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
+import javafx.beans.property.LongProperty;
 import javafx.collections.ObservableList;
 import javafx.collections.ObservableMap;
 import javafx.collections.ObservableSet;
@@ -19,6 +20,7 @@ import javafx.collections.SetChangeListener;
 import lighthouse.LighthouseBackend;
 import lighthouse.files.AppDirectory;
 import lighthouse.files.DiskManager;
+import lighthouse.files.PledgeStore;
 import lighthouse.protocol.Ex;
 import lighthouse.protocol.LHProtos;
 import lighthouse.protocol.Project;
@@ -39,13 +41,15 @@ import java.math.BigInteger;
 import java.net.InetSocketAddress;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -388,11 +392,28 @@ public class LighthouseBackendTest extends TestWithPeerGroup {
         assertEquals(1, pledges.size());
         final LHProtos.Pledge pledge2 = pledges.iterator().next();
         assertEquals(Coin.COIN.value / 2, pledge2.getTotalInputValue());
-
-        // New block: let's pretend this block contains a revocation transaction. LighthouseBackend should recheck.
-        Block newBlock = FakeTxBuilder.makeSolvedTestBlock(blockStore, new ECKey().toAddress(params));
+        // The total for the overview starts at zero and picks the pledge up once the backend has mirrored it.
+        LongProperty total = backend.makeTotalPledgedPropertyAsync(project, gate);
+        assertEquals(0, total.get());
+        gate.waitAndRun();
+        assertEquals(Coin.COIN.value / 2, total.get());
+        // The pledge input is now in the Bloom filter so we can spot it being revoked.
+        BloomFilter filter = checkBloomFilter(p1, p2);
+        assertTrue(filter.contains(pledgeTx.getInput(0).getOutpoint().bitcoinSerialize()));
+
+        // A block that doesn't touch the pledge doesn't cause a recheck.
+        inbound(p1, FakeTxBuilder.makeSolvedTestBlock(blockStore, new ECKey().toAddress(params)));
+        pingAndWait(p1);
+        for (int i = 0; i < 3; i++)
+            backend.executor.fetchFrom(() -> null);   // Give any recheck time to get as far as sending a query.
+        pingAndWait(p2);   // Would fail if a getutxos was sent instead.
+
+        // New block containing a revocation transaction. LighthouseBackend should recheck.
+        Transaction revocation = new Transaction(params);
+        revocation.addInput(stubTx.getOutput(0));
+        revocation.addOutput(stubTx.getOutput(0).getValue(), new ECKey().toAddress(params));
+        Block newBlock = FakeTxBuilder.makeSolvedTestBlock(blockStore.getChainHead().getHeader(), revocation);
         inbound(p1, newBlock);
-        // TODO: Replace this with just watching for revocations using the Bloom filter.
         getutxos = (GetUTXOsMessage) waitForOutbound(p2);
         assertNotNull(getutxos);
         assertEquals(pledgeTx.getInput(0).getOutpoint(), getutxos.getOutPoints().get(0));
@@ -404,6 +425,8 @@ public class LighthouseBackendTest extends TestWithPeerGroup {
                 blockStore.getChainHead().getHeight()));
         gate.waitAndRun();
         assertEquals(0, pledges.size());   // was revoked
+        gate.waitAndRun();
+        assertEquals(0, total.get());
 
         peerGroup.stopAsync();
         peerGroup.awaitTerminated();
@@ -479,6 +502,14 @@ public class LighthouseBackendTest extends TestWithPeerGroup {
         assertTrue(statuses.get(project).error instanceof Ex.InconsistentUTXOAnswers);
     }
 
+    // Verified pledges get added to the Bloom filter, so filter updates can turn up at any point. Skip over them.
+    private Message waitForOutboundSkippingFilters(InboundMessageQueuer peer) throws InterruptedException {
+        Message message = waitForOutbound(peer);
+        while (message instanceof BloomFilter || message instanceof MemoryPoolMessage)
+            message = waitForOutbound(peer);
+        return message;
+    }
+
     private BloomFilter checkBloomFilter(InboundMessageQueuer... peers) throws InterruptedException {
         BloomFilter result = null;
         for (InboundMessageQueuer peer : peers) {
@@ -545,7 +576,7 @@ public class LighthouseBackendTest extends TestWithPeerGroup {
         assertFalse(future.isDone());
 
         // Broadcast happens.
-        Transaction broadcast = (Transaction) waitForOutbound(p1);
+        Transaction broadcast = (Transaction) waitForOutboundSkippingFilters(p1);
         assertEquals(depTx, broadcast);
         assertNull(outbound(p2));
         InventoryMessage inv = new InventoryMessage(params);
@@ -576,15 +607,175 @@ public class LighthouseBackendTest extends TestWithPeerGroup {
 
         future.get();
 
-        // And the pledge was saved to disk named after the hash of the pledge contents.
-        final Sha256Hash pledgeHash = Sha256Hash.create(pledge.toByteArray());
-        final List<Path> dirFiles = mapList(listDir(AppDirectory.dir()), Path::getFileName);
-        assertTrue(dirFiles.contains(Paths.get(pledgeHash.toString() + DiskManager.PLEDGE_FILE_EXTENSION)));
+        // And the pledge was saved to the pledge store.
+        try (PledgeStore store = new PledgeStore(AppDirectory.dir().resolve(PledgeStore.FILE_NAME))) {
+            assertEquals(ImmutableList.of(pledge), store.getPledges(project.getID()));
+        }
+
+        peerGroup.stopAsync();
+        peerGroup.awaitTerminated();
+    }
+
+    @Test
+    public void revokedPledgeLeavesStore() throws Exception {
+        // Own disk manager so the client backend from setUp doesn't see, and check, the submitted pledge too.
+        backend = new LighthouseBackend(SERVER, peerGroup, blockChain, pledgingWallet, new DiskManager(executor, true), executor);
+        backend.setMinPeersForUTXOQuery(1);
+        backend.setMaxJitterSeconds(0);
+        peerGroup.startAsync();
+        peerGroup.awaitRunning();
+
+        projectModel.serverName.set("localhost");
+        project = projectModel.getProject();
+        Triplet<Transaction, Transaction, LHProtos.Pledge> data = TestUtils.makePledge(project, to, project.getGoalAmount());
+        Transaction stubTx = data.getValue0();
+        Transaction pledgeTx = data.getValue1();
+        LHProtos.Pledge pledge = data.getValue2();
+        writeProjectToDisk();
+        // The client backend asks the local test server about the project via the gate, so use a separate one.
+        AffinityExecutor.Gate pledgesGate = new AffinityExecutor.Gate();
+        ObservableSet<LHProtos.Pledge> pledges = backend.mirrorOpenPledges(project, pledgesGate);
+        InboundMessageQueuer p1 = connectPeer(1);
+        InboundMessageQueuer p2 = connectPeer(2, supportingVer);
+
+        // Pledge is submitted via HTTP, checked and stored.
+        assertEquals(pledge, backend.submitPledge(project, pledge).get());
+        doGetUTXOAnswer(stubTx.getOutput(0), p2);
+        pledgesGate.waitAndRun();
+        assertEquals(1, pledges.size());
+        Path storePath = AppDirectory.dir().resolve(PledgeStore.FILE_NAME);
+        try (PledgeStore store = new PledgeStore(storePath)) {
+            assertEquals(ImmutableList.of(pledge), store.getPledges(project.getID()));
+        }
+        // Saving the pledge doesn't make the backend check it a second time.
+        for (int i = 0; i < 3; i++)
+            backend.executor.fetchFrom(() -> null);
+        pingAndWait(p2);   // Would fail if a getutxos was sent instead.
+
+        // Pledge gets revoked, so the server forgets it.
+        Transaction revocation = new Transaction(params);
+        revocation.addInput(stubTx.getOutput(0));
+        revocation.addOutput(stubTx.getOutput(0).getValue(), new ECKey().toAddress(params));
+        inbound(p1, FakeTxBuilder.makeSolvedTestBlock(blockStore.getChainHead().getHeader(), revocation));
+        GetUTXOsMessage getutxos = (GetUTXOsMessage) waitForOutboundSkippingFilters(p2);
+        assertEquals(pledgeTx.getInput(0).getOutpoint(), getutxos.getOutPoints().get(0));
+        final ArrayList<TransactionOutput> empty = new ArrayList<>(1);
+        empty.add(null);
+        inbound(p2, new UTXOsMessage(params, empty,
+                new long[]{UTXOsMessage.MEMPOOL_HEIGHT},
+                blockStore.getChainHead().getHeader().getHash(),
+                blockStore.getChainHead().getHeight()));
+        pledgesGate.waitAndRun();
+        assertEquals(0, pledges.size());
+        backend.executor.fetchFrom(() -> null);   // The store is updated just after the open set.
+        try (PledgeStore store = new PledgeStore(storePath)) {
+            assertEquals(ImmutableList.of(), store.getPledges(project.getID()));
+        }
+
+        peerGroup.stopAsync();
+        peerGroup.awaitTerminated();
+    }
+
+    @Test
+    public void claimedPledgesSurviveRestart() throws Exception {
+        backend = new LighthouseBackend(SERVER, peerGroup, blockChain, pledgingWallet, new DiskManager(executor, true), executor);
+        backend.setMinPeersForUTXOQuery(1);
+        backend.setMaxJitterSeconds(0);
+        peerGroup.startAsync();
+        peerGroup.awaitRunning();
+
+        projectModel.serverName.set("localhost");
+        project = projectModel.getProject();
+        Triplet<Transaction, Transaction, LHProtos.Pledge> data1 = TestUtils.makePledge(project, to, project.getGoalAmount());
+        Triplet<Transaction, Transaction, LHProtos.Pledge> data2 = TestUtils.makePledge(project, to, project.getGoalAmount());
+        LHProtos.Pledge pledge1 = data1.getValue2();
+        LHProtos.Pledge pledge2 = data2.getValue2();
+        writeProjectToDisk();
+        AffinityExecutor.Gate pledgesGate = new AffinityExecutor.Gate();
+        ObservableSet<LHProtos.Pledge> openPledges = backend.mirrorOpenPledges(project, pledgesGate);
+        ObservableSet<LHProtos.Pledge> claimedPledges = backend.mirrorClaimedPledges(project, pledgesGate);
+        InboundMessageQueuer p1 = connectPeer(1);
+        InboundMessageQueuer p2 = connectPeer(2, supportingVer);
+
+        assertEquals(pledge1, backend.submitPledge(project, pledge1).get());
+        doGetUTXOAnswer(p2, data1.getValue0().getOutput(0));
+        assertEquals(pledge2, backend.submitPledge(project, pledge2).get());
+        doGetUTXOAnswer(p2, data2.getValue0().getOutput(0));
+        while (openPledges.size() < 2)
+            pledgesGate.waitAndRun();
+
+        // The project is claimed. The block makes the server recheck the pledges, whose inputs are now spent.
+        Transaction contract = project.completeContract(ImmutableSet.of(pledge1, pledge2));
+        inbound(p1, FakeTxBuilder.makeSolvedTestBlock(blockStore.getChainHead().getHeader(), contract));
+        doGetUTXOAnswer(p2);
+        while (claimedPledges.size() < 2 || !openPledges.isEmpty())
+            pledgesGate.waitAndRun();
+        backend.executor.fetchFrom(() -> null);   // The store is updated just after the claimed set.
+        try (PledgeStore store = new PledgeStore(AppDirectory.dir().resolve(PledgeStore.FILE_NAME))) {
+            assertEquals(ImmutableSet.of(pledge1, pledge2), ImmutableSet.copyOf(store.getPledges(project.getID())));
+        }
+
+        // After a restart the stored pledges are checked again, and found in the claim. The project is already on disk,
+        // so wire up the new backend on its own thread, before the disk manager loads it.
+        LighthouseBackend restarted = executor.fetchFrom(() ->
+                new LighthouseBackend(SERVER, peerGroup, blockChain, pledgingWallet, new DiskManager(executor, true), executor));
+        restarted.setMinPeersForUTXOQuery(1);
+        restarted.setMaxJitterSeconds(0);
+        ObservableSet<LHProtos.Pledge> restartedClaimed = restarted.mirrorClaimedPledges(project, pledgesGate);
+        doGetUTXOAnswer(p2);
+        while (restartedClaimed.size() < 2)
+            pledgesGate.waitAndRun();
+        assertEquals(ImmutableSet.of(pledge1, pledge2), restartedClaimed);
+        assertEquals(project.getGoalAmount(), restarted.executor.fetchFrom(() -> restarted.fetchTotalPledged(project)));
 
         peerGroup.stopAsync();
         peerGroup.awaitTerminated();
     }
 
+    @Test
+    public void pledgeFilesImportedOnce() throws Exception {
+        LHProtos.Pledge pledge = TestUtils.makePledge(project, to, project.getGoalAmount()).getValue2();
+        Path file = AppDirectory.dir().resolve("old-pledge" + DiskManager.PLEDGE_FILE_EXTENSION);
+        try (OutputStream stream = Files.newOutputStream(file)) {
+            pledge.writeTo(stream);
+        }
+        // Older servers kept each pledge in its own file. They're moved into the store and renamed out of the way.
+        backend = new LighthouseBackend(SERVER, peerGroup, blockChain, pledgingWallet, new DiskManager(executor, true), executor);
+        assertFalse(Files.exists(file));
+        try (PledgeStore store = new PledgeStore(AppDirectory.dir().resolve(PledgeStore.FILE_NAME))) {
+            assertEquals(ImmutableList.of(pledge), store.getPledges(project.getID()));
+        }
+    }
+
+    @Test
+    public void pendingPledgesCountTowardsGoal() throws Exception {
+        // The peer group isn't started, so none of the submitted pledges can finish being checked.
+        backend = new LighthouseBackend(SERVER, peerGroup, blockChain, pledgingWallet, new DiskManager(executor, true), executor);
+        LHProtos.Pledge pledge1 = TestUtils.makePledge(project, to, project.getGoalAmount()).getValue2();
+        LHProtos.Pledge pledge2 = TestUtils.makePledge(project, to, project.getGoalAmount()).getValue2();
+        LHProtos.Pledge pledge3 = TestUtils.makePledge(project, to, project.getGoalAmount()).getValue2();
+        // Each pledge is for half the goal, so only two of them fit.
+        assertEquals(pledge1, backend.submitPledge(project, pledge1).get());
+        assertEquals(pledge2, backend.submitPledge(project, pledge2).get());
+        try {
+            backend.submitPledge(project, pledge3).get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof Ex.GoalExceeded);
+        }
+    }
+
+    @Test
+    public void pendingPledgeUploadedTwice() throws Exception {
+        backend = new LighthouseBackend(SERVER, peerGroup, blockChain, pledgingWallet, new DiskManager(executor, true), executor);
+        LHProtos.Pledge pledge1 = TestUtils.makePledge(project, to, project.getGoalAmount()).getValue2();
+        LHProtos.Pledge pledge2 = TestUtils.makePledge(project, to, project.getGoalAmount()).getValue2();
+        // A client retrying an upload mustn't use up the room left for other pledges.
+        assertEquals(pledge1, backend.submitPledge(project, pledge1).get());
+        assertEquals(pledge1, backend.submitPledge(project, pledge1).get());
+        assertEquals(pledge2, backend.submitPledge(project, pledge2).get(10, TimeUnit.SECONDS));
+    }
+
     @Test
     public void claimServerless() throws Exception {
         // Create enough pledges to satisfy the project, broadcast the claim transaction, make sure the backend
@@ -610,17 +801,14 @@ public class LighthouseBackendTest extends TestWithPeerGroup {
         LHProtos.Pledge pledge2 = data2.getValue2();
 
         // The user drops the pledges.
-        try (OutputStream stream = Files.newOutputStream(dropDir.resolve("dropped-pledge1" + DiskManager.PLEDGE_FILE_EXTENSION))) {
-            pledge1.writeTo(stream);
-        }
-        try (OutputStream stream = Files.newOutputStream(dropDir.resolve("dropped-pledge2" + DiskManager.PLEDGE_FILE_EXTENSION))) {
-            pledge2.writeTo(stream);
-        }
+        dropPledge(dropDir, "dropped-pledge1", pledge1);
+        dropPledge(dropDir, "dropped-pledge2", pledge2);
 
         InboundMessageQueuer p1 = connectPeer(1);
         InboundMessageQueuer p2 = connectPeer(2, supportingVer);
-        doGetUTXOAnswer(data.getValue0().getOutput(0), p2);
-        doGetUTXOAnswer(data2.getValue0().getOutput(0), p2);
+        // The pledges can be looked up in either order.
+        doGetUTXOAnswer(p2, data.getValue0().getOutput(0), data2.getValue0().getOutput(0));
+        doGetUTXOAnswer(p2, data.getValue0().getOutput(0), data2.getValue0().getOutput(0));
 
         gate.waitAndRun();
         gate.waitAndRun();
@@ -631,15 +819,15 @@ public class LighthouseBackendTest extends TestWithPeerGroup {
 
         Transaction contract = project.completeContract(ImmutableSet.of(pledge1, pledge2));
         inbound(p1, InventoryMessage.with(contract));
-        waitForOutbound(p1);   // getdata for the contract.
+        waitForOutboundSkippingFilters(p1);   // getdata for the contract.
         inbound(p2, InventoryMessage.with(contract));
         inbound(p1, contract);
-        GetDataMessage gdm = (GetDataMessage) waitForOutbound(p1);   // Dep resolution.
+        GetDataMessage gdm = (GetDataMessage) waitForOutboundSkippingFilters(p1);   // Dep resolution.
         inbound(p1, new NotFoundMessage(params, gdm.getItems()));
 
-        for (int i = 0; i < 5; i++) {
-            gate.waitAndRun();   // updates to lists and things.
-        }
+        // Updates to lists and things, which may be batched.
+        while (states.get(project.getID()).state != LighthouseBackend.ProjectState.CLAIMED || claimedPledges.size() < 2)
+            gate.waitAndRun();
 
         assertEquals(LighthouseBackend.ProjectState.CLAIMED, states.get(project.getID()).state);
         assertEquals(contract.getHash(), states.get(project.getID()).claimedBy);
@@ -697,9 +885,7 @@ public class LighthouseBackendTest extends TestWithPeerGroup {
         InboundMessageQueuer p1 = connectPeer(1, supportingVer);
         InboundMessageQueuer p2 = connectPeer(2, supportingVer);
         // User drops pledge 1
-        try (OutputStream stream = Files.newOutputStream(dropDir.resolve("dropped-pledge1" + DiskManager.PLEDGE_FILE_EXTENSION))) {
-            pledge1.build().writeTo(stream);
-        }
+        dropPledge(dropDir, "dropped-pledge1", pledge1.build());
         doGetUTXOAnswer(output, p1);
         doGetUTXOAnswer(output, p2);
         gate.waitAndRun();   // statuses (start lookup)
@@ -711,9 +897,7 @@ public class LighthouseBackendTest extends TestWithPeerGroup {
         assertEquals(pledge1.build(), openPledges.iterator().next());
 
         // User drops pledge 2
-        try (OutputStream stream = Files.newOutputStream(dropDir.resolve("dropped-pledge2" + DiskManager.PLEDGE_FILE_EXTENSION))) {
-            pledge2.build().writeTo(stream);
-        }
+        dropPledge(dropDir, "dropped-pledge2", pledge2.build());
         doGetUTXOAnswer(output, p1);
         doGetUTXOAnswer(output, p2);
 
@@ -761,12 +945,44 @@ public class LighthouseBackendTest extends TestWithPeerGroup {
         return pledge;
     }
 
+    // Writing the file in place can be seen as a create and then a modify, which checks the pledge twice. Moving it
+    // in makes it appear in one go, so each dropped pledge is looked up exactly once.
+    private void dropPledge(Path dir, String name, LHProtos.Pledge pledge) throws IOException {
+        Path tmp = dir.resolve(name + ".tmp");
+        try (OutputStream stream = Files.newOutputStream(tmp)) {
+            pledge.writeTo(stream);
+        }
+        Files.move(tmp, dir.resolve(name + DiskManager.PLEDGE_FILE_EXTENSION), StandardCopyOption.ATOMIC_MOVE);
+    }
+
     private void doGetUTXOAnswer(TransactionOutput output, InboundMessageQueuer p2) throws InterruptedException, BlockStoreException {
-        waitForOutbound(p2);  // getutxos
+        assertTrue(waitForOutboundSkippingFilters(p2) instanceof GetUTXOsMessage);
         inbound(p2, new UTXOsMessage(params,
                 ImmutableList.of(output),
                 new long[]{UTXOsMessage.MEMPOOL_HEIGHT},
                 blockStore.getChainHead().getHeader().getHash(),
                 blockStore.getChainHead().getHeight()));
     }
+
+    // Answers the next getutxos with those of the given outputs it asks about, and reports the rest as spent.
+    private void doGetUTXOAnswer(InboundMessageQueuer p2, TransactionOutput... outputs) throws InterruptedException, BlockStoreException {
+        GetUTXOsMessage query = (GetUTXOsMessage) waitForOutboundSkippingFilters(p2);
+        List<TransactionOutput> answer = new ArrayList<>();
+        int hits = 0;
+        for (TransactionOutPoint outPoint : query.getOutPoints()) {
+            TransactionOutput hit = null;
+            for (TransactionOutput output : outputs) {
+                if (output.getOutPointFor().equals(outPoint))
+                    hit = output;
+            }
+            answer.add(hit);
+            if (hit != null)
+                hits++;
+        }
+        long[] heights = new long[hits];
+        Arrays.fill(heights, UTXOsMessage.MEMPOOL_HEIGHT);
+        inbound(p2, new UTXOsMessage(params, answer, heights,
+                blockStore.getChainHead().getHeader().getHash(),
+                blockStore.getChainHead().getHeight()));
+    }
 }
@@ -4,12 +4,12 @@ import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.protobuf.ByteString;
-import javafx.beans.InvalidationListener;
 import javafx.beans.property.LongProperty;
 import javafx.beans.property.SimpleLongProperty;
 import javafx.collections.*;
 import lighthouse.files.AppDirectory;
 import lighthouse.files.DiskManager;
+import lighthouse.files.PledgeStore;
 import lighthouse.protocol.*;
 import lighthouse.threading.AffinityExecutor;
 import lighthouse.threading.ObservableMirrors;
@@ -21,19 +21,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
-import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.net.URI;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Supplier;
 
 import static com.google.common.base.Preconditions.*;
 import static com.google.common.base.Throwables.getRootCause;
-import static java.util.stream.Collectors.toMap;
 import static lighthouse.protocol.LHUtils.*;
 import static lighthouse.utils.MoreBindings.mergeSets;
 
@@ -53,12 +51,33 @@ public class LighthouseBackend extends AbstractBlockChainListener {
     private static final Logger log = LoggerFactory.getLogger(LighthouseBackend.class);
 
     private final DiskManager diskManager;
+    // Pledges accepted via HTTP, so they survive restarts. Only used in server mode.
+    @Nullable private final PledgeStore pledgeStore;
+    // Set whilst savePledge adds a pledge submitted via HTTP to the disk manager's set. Only touched on the backend thread.
+    @Nullable private LHProtos.Pledge pledgeBeingSaved;
+    // Values of the pledges submitted via HTTP that are still being checked, per project and keyed by pledge hash so a
+    // re-upload isn't counted twice. Only touched on the backend thread.
+    private final Map<Project, Map<Sha256Hash, Long>> pendingPledgeValues = new HashMap<>();
     public final AffinityExecutor executor;
     private final PeerGroup peerGroup;
     private final PledgingWallet wallet;
     private final CompletableFuture<Boolean> initialized = new CompletableFuture<>();
 
     private int minPeersForUTXOQuery = 2;
+    // If non-zero, UTXO queries go to the quickest peers and complete once this many agree, instead of waiting for
+    // every peer we're connected to.
+    private int utxoQueryQuorum = 0;
+    private final PeerLatencyTracker utxoPeerLatencies = new PeerLatencyTracker();
+    // Pledge scripts are checked here, so a big batch of pledges doesn't tie up the backend or network threads.
+    private ForkJoinPool scriptVerificationPool = ForkJoinPool.commonPool();
+    // Project servers are queried through this, which bounds the number of threads and connections used.
+    private ServerConnections serverConnections = ServerConnections.SHARED;
+    // What we learned about each pledge input the last time we asked the P2P network. Unspent inputs are added to our
+    // Bloom filter, so we hear about transactions spending them and only need to recheck the pledges affected.
+    private final UTXOStatusCache utxoStatusCache = new UTXOStatusCache();
+    // Projects with pledges that may have been revoked or claimed since we last checked. Only touched on the backend
+    // thread.
+    private final Set<Project> projectsToRecheck = new HashSet<>();
 
     public static enum Mode {
         CLIENT,
@@ -103,6 +122,46 @@ public class LighthouseBackend extends AbstractBlockChainListener {
     }
     private final ObservableMap<Project, CheckStatus> checkStatuses;
 
+    /** Running totals of a project's pledges, kept up to date as the pledge sets change. Immutable. */
+    public static class PledgeTotals {
+        public static final PledgeTotals EMPTY = new PledgeTotals(0, 0, 0, 0);
+
+        public final long openValue, claimedValue;
+        public final int openCount, claimedCount;
+
+        public PledgeTotals(long openValue, int openCount, long claimedValue, int claimedCount) {
+            this.openValue = openValue;
+            this.openCount = openCount;
+            this.claimedValue = claimedValue;
+            this.claimedCount = claimedCount;
+        }
+
+        public Coin getTotalValue() {
+            return Coin.valueOf(openValue + claimedValue);
+        }
+
+        public int getTotalCount() {
+            return openCount + claimedCount;
+        }
+
+        private PledgeTotals plus(long value, int count, boolean claimed) {
+            if (claimed)
+                return new PledgeTotals(openValue, openCount, claimedValue + value, claimedCount + count);
+            else
+                return new PledgeTotals(openValue + value, openCount + count, claimedValue, claimedCount);
+        }
+
+        @Override
+        public String toString() {
+            return "PledgeTotals{" +
+                    "open=" + openValue + "/" + openCount +
+                    ", claimed=" + claimedValue + "/" + claimedCount +
+                    '}';
+        }
+    }
+    // Written only from the backend thread but readable from anywhere without a round trip.
+    private final Map<Project, PledgeTotals> pledgeTotals = new ConcurrentHashMap<>();
+
     // Non-revoked non-claimed pledges either:
     //  - Fetched from the remote server, which is inherently trusted as it's run by the person you're
     //    trying to give money to
@@ -112,6 +171,24 @@ public class LighthouseBackend extends AbstractBlockChainListener {
     private final Map<Project, ObservableSet<LHProtos.Pledge>> openPledges;
     // Pledges that don't show up in the UTXO set but did show up in a claim tx we're watching.
     private final Map<Project, ObservableSet<LHProtos.Pledge>> claimedPledges;
+    // Every pledge in the sets above, keyed by the hash of its serialized form, which is what scrubbed pledges refer to
+    // in their orig_hash field. Kept up to date by the set listeners, so pledges are hashed once rather than on every
+    // sync, and finding a pledge doesn't mean scanning every project.
+    private static class IndexedPledge {
+        final Project project;
+        final LHProtos.Pledge pledge;
+        final boolean claimed;
+
+        IndexedPledge(Project project, LHProtos.Pledge pledge, boolean claimed) {
+            this.project = project;
+            this.pledge = pledge;
+            this.claimed = claimed;
+        }
+    }
+    private final Map<Sha256Hash, IndexedPledge> pledgeIndex = new HashMap<>();
+    private final Map<LHProtos.Pledge, Sha256Hash> pledgeHashes = new HashMap<>();
+    // ETag of the last status each server gave us, so polls can be answered with "not modified" or a delta.
+    private final Map<Project, String> serverStatusTags;
 
     @GuardedBy("this")
     private final Map<String, Project> projectsByUrlPath;
@@ -132,6 +209,8 @@ public class LighthouseBackend extends AbstractBlockChainListener {
         this.peerGroup = peerGroup;
         this.openPledges = new HashMap<>();
         this.claimedPledges = new HashMap<>();
+        this.serverStatusTags = new HashMap<>();
+        this.pledgeStore = mode == Mode.SERVER ? openPledgeStore() : null;
         this.wallet = wallet;
         this.mode = mode;
         this.checkStatuses = FXCollections.observableHashMap();
@@ -151,6 +230,14 @@ public class LighthouseBackend extends AbstractBlockChainListener {
         // This can simplify code elsewhere.
         executor.execute(() -> {
             chain.addListener(this, executor);
+            // Watch for spends of pledge inputs, both in blocks (via the chain listener) and in the mempool.
+            peerGroup.addPeerFilterProvider(utxoStatusCache);
+            peerGroup.addEventListener(new AbstractPeerEventListener() {
+                @Override
+                public void onTransaction(Peer peer, Transaction t) {
+                    observeSpends(t);
+                }
+            }, executor);
 
             // Load pledges found in the wallet.
             for (LHProtos.Pledge pledge : wallet.getPledges()) {
@@ -196,6 +283,24 @@ public class LighthouseBackend extends AbstractBlockChainListener {
         });
     }
 
+    // Suffix given to old style pledge files once they're in the pledge store.
+    private static final String IMPORTED_PLEDGE_FILE_SUFFIX = ".imported";
+
+    private static PledgeStore openPledgeStore() {
+        PledgeStore store = unchecked(() -> new PledgeStore(AppDirectory.dir().resolve(PledgeStore.FILE_NAME)));
+        // Older servers saved each pledge to its own file, so pick those up. Each file is renamed once imported so
+        // it isn't loaded again, and a file that fails to import is left for the next start.
+        for (Path path : listDir(AppDirectory.dir())) {
+            if (!path.toString().endsWith(DiskManager.PLEDGE_FILE_EXTENSION)) continue;
+            log.info("Importing pledge file {}", path);
+            ignoreAndLog(() -> {
+                store.add(LHProtos.Pledge.parseFrom(Files.readAllBytes(path)));
+                Files.move(path, path.resolveSibling(path.getFileName() + IMPORTED_PLEDGE_FILE_SUFFIX));
+            });
+        }
+        return store;
+    }
+
     private void addClaimConfidenceListener(AffinityExecutor executor, Transaction transaction, Project project) {
         transaction.getConfidence().addEventListener(new TransactionConfidence.Listener() {
             private boolean done = false;
@@ -274,6 +379,22 @@ public class LighthouseBackend extends AbstractBlockChainListener {
         getOpenPledgesFor(project).removeAll(taken);
     }
 
+    // Revoked pledges never become open again, so there's no point loading them after a restart. Claimed pledges stay
+    // in the store: after a restart they are checked again and found in the claim, which is how they get back into
+    // the claimed set. Revoked pledges are also dropped from the set we recheck, which makes diskPledgesChanged forget
+    // their inputs in the UTXO status cache.
+    private void forgetStoredPledges(Project project, Collection<LHProtos.Pledge> pledges) {
+        executor.checkOnThread();
+        if (pledgeStore == null)
+            return;
+        ObservableSet<LHProtos.Pledge> pledgesFor = diskManager.getPledgesFor(project);
+        for (LHProtos.Pledge pledge : pledges) {
+            uncheck(() -> pledgeStore.remove(pledge));
+            if (pledgesFor != null)
+                pledgesFor.remove(pledge);
+        }
+    }
+
     public void waitForInit() {
         checkedGet(initialized);
     }
@@ -318,6 +439,8 @@ public class LighthouseBackend extends AbstractBlockChainListener {
                 } else {
                     log.info("Checking newly found project against P2P network: {}", project);
                     ObservableSet<LHProtos.Pledge> unverifiedPledges = diskManager.getPledgesOrCreate(project);
+                    if (pledgeStore != null)
+                        unverifiedPledges.addAll(pledgeStore.getPledges(project.getID()));
                     unverifiedPledges.addListener((SetChangeListener<LHProtos.Pledge>) change2 -> diskPledgesChanged(change2, project));
                     checkPledgesAgainstP2PNetwork(project, unverifiedPledges, true);
                 }
@@ -341,11 +464,14 @@ public class LighthouseBackend extends AbstractBlockChainListener {
                 // user removed it from disk, so we can't keep track of it reliably afterwards anyway.
                 openPledges.get(project).remove(removedPledge);
                 getClaimedPledgesFor(project).remove(removedPledge);
+                List<TransactionOutPoint> outPoints = getInputOutPoints(project, removedPledge);
+                if (outPoints != null)
+                    utxoStatusCache.forget(outPoints);
             }
         }
         if (change.wasAdded()) {
             final LHProtos.Pledge added = change.getElementAdded();
-            if (!isPledgeKnown(added)) {
+            if (!added.equals(pledgeBeingSaved) && !isPledgeKnown(added)) {
                 log.info("New pledge found on disk for {}", project);
                 // Jitter to give the dependency txns time to propagate in case somehow our source of pledges
                 // is faster than the P2P network (e.g. local network drive or in regtesting mode).
@@ -357,9 +483,41 @@ public class LighthouseBackend extends AbstractBlockChainListener {
     private boolean isPledgeKnown(LHProtos.Pledge pledge) {
         executor.checkOnThread();
         if (mode == Mode.CLIENT && wallet.wasPledgeRevoked(pledge)) return true;
-        for (ObservableSet<LHProtos.Pledge> set : openPledges.values()) if (set.contains(pledge)) return true;
-        for (ObservableSet<LHProtos.Pledge> set : claimedPledges.values()) if (set.contains(pledge)) return true;
-        return false;
+        return pledgeHashes.containsKey(pledge);
+    }
+
+    private void updatePledgeIndex(Project project, SetChangeListener.Change<? extends LHProtos.Pledge> change, boolean claimed) {
+        executor.checkOnThread();
+        if (change.wasRemoved()) {
+            LHProtos.Pledge pledge = change.getElementRemoved();
+            Sha256Hash hash = pledgeHashes.get(pledge);
+            IndexedPledge entry = hash == null ? null : pledgeIndex.get(hash);
+            // If it was added to another set first, leave it be.
+            if (entry != null && entry.project.equals(project) && entry.claimed == claimed) {
+                pledgeIndex.remove(hash);
+                pledgeHashes.remove(pledge);
+            }
+        }
+        if (change.wasAdded()) {
+            LHProtos.Pledge pledge = change.getElementAdded();
+            Sha256Hash hash = pledgeHashes.computeIfAbsent(pledge, LHUtils::pledgeHash);
+            pledgeIndex.put(hash, new IndexedPledge(project, pledge, claimed));
+        }
+    }
+
+    // Like hashFromPledge, but avoids hashing pledges we already have.
+    private Sha256Hash getPledgeHash(LHProtos.Pledge pledge) {
+        if (pledge.hasOrigHash())
+            return hashFromPledge(pledge);
+        Sha256Hash hash = pledgeHashes.get(pledge);
+        return hash != null ? hash : hashFromPledge(pledge);
+    }
+
+    // Returns the open pledge of the given project that has the given hash, if any.
+    @Nullable
+    private LHProtos.Pledge getOpenPledgeByHash(Project project, Sha256Hash hash) {
+        IndexedPledge entry = pledgeIndex.get(hash);
+        return entry != null && !entry.claimed && entry.project.equals(project) ? entry.pledge : null;
     }
 
     // Completes with either the given pledge, or with null if it failed verification (reason not available here).
@@ -375,8 +533,8 @@ public class LighthouseBackend extends AbstractBlockChainListener {
     }
 
     // Completes with the set of pledges that passed verification.
-    // If checkingAllPledges is false then pledges contains a single item, otherwise it contains all pledges for the
-    // project together.
+    // If checkingAllPledges is false then pledges is a subset of the pledges for the project, which are also checked
+    // for double spends against the open pledges outside it. Otherwise it contains all pledges for the project.
     private CompletableFuture<Set<LHProtos.Pledge>> checkPledgesAgainstP2PNetwork(Project project,
                                                                                   final ObservableSet<LHProtos.Pledge> pledges,
                                                                                   boolean checkingAllPledges) {
@@ -384,8 +542,6 @@ public class LighthouseBackend extends AbstractBlockChainListener {
             log.info("No pledges to check");
             return CompletableFuture.completedFuture(Collections.EMPTY_SET);
         }
-        if (!checkingAllPledges)
-            checkState(pledges.size() == 1);
         CompletableFuture<Set<LHProtos.Pledge>> result = new CompletableFuture<>();
         if (mode == Mode.CLIENT) {
             // If we're running inside the desktop app, forbid pledges with dependencies for now. It simplifies things:
@@ -412,10 +568,7 @@ public class LighthouseBackend extends AbstractBlockChainListener {
                 @Override
                 public void onSuccess(@Nullable List<Peer> peers) {
                     log.info("Peers available: {}", peers);
-                    // On backend thread here. We must be because we need to ensure only a single UTXO query is in flight
-                    // on the P2P network at once and only triggering such queries from the backend thread is a simple
-                    // way to achieve that. It means we block the backend thread until the query completes or times out
-                    // but that's OK - the other tasks can wait.
+                    // On backend thread here, which owns the UTXO query queue.
                     executor.checkOnThread();
                     checkNotNull(peers);
                     // Do a fast delete of any peers that claim they don't support NODE_GETUTXOS. We ensure we always
@@ -432,7 +585,8 @@ public class LighthouseBackend extends AbstractBlockChainListener {
                     }
                     if (peers.size() != origSize)
                         log.info("Dropped {} peers for not supporting NODE_GETUTXOS, now have {}", peers.size() - origSize, peers.size());
-                    doUTXOLookupsForPledges(project, pledges, peers, checkingAllPledges, result);
+                    final List<Peer> finalPeers = peers;
+                    enqueueUTXOQuery(() -> doUTXOLookupsForPledges(project, pledges, finalPeers, checkingAllPledges, result));
                 }
 
                 @Override
@@ -455,6 +609,7 @@ public class LighthouseBackend extends AbstractBlockChainListener {
     private void markAsErrored(Project project, Throwable ex) {
         log.info("Checking had an error: {}", project);
         checkStatuses.put(project, CheckStatus.withError(getRootCause(ex)));
+        projectsToRecheck.add(project);
     }
 
     private void markAsCheckDone(Project project) {
@@ -462,30 +617,87 @@ public class LighthouseBackend extends AbstractBlockChainListener {
         checkStatuses.remove(project);
     }
 
-    private void doUTXOLookupsForPledges(Project project, ObservableSet<LHProtos.Pledge> pledges, List<Peer> peers,
-                                         boolean checkingAllPledges, CompletableFuture<Set<LHProtos.Pledge>> result) {
+    // We only allow a single UTXO query to be in flight on the P2P network at once. Rather than blocking the backend
+    // thread until each one completes, queries wait their turn here, and the next one starts once the previous one's
+    // results were processed or it timed out. Only touched on the backend thread.
+    private final Deque<Supplier<CompletableFuture<Void>>> utxoQueryQueue = new ArrayDeque<>();
+    private boolean utxoQueryInFlight;
+
+    private void enqueueUTXOQuery(Supplier<CompletableFuture<Void>> query) {
+        executor.checkOnThread();
+        utxoQueryQueue.add(query);
+        runNextUTXOQuery();
+    }
+
+    private void runNextUTXOQuery() {
+        executor.checkOnThread();
+        if (utxoQueryInFlight || utxoQueryQueue.isEmpty())
+            return;
+        utxoQueryInFlight = true;
+        utxoQueryQueue.poll().get().whenCompleteAsync((v, ex) -> {
+            utxoQueryInFlight = false;
+            runNextUTXOQuery();
+        }, executor);
+    }
+
+    private static final int UTXO_QUERY_TIMEOUT_SECS = 10;
+
+    // Completes once the results of the lookups have been processed, which happens when all peers answered or the
+    // timeout passed, whichever comes first. The backend thread is free to do other work in the meantime.
+    private CompletableFuture<Void> doUTXOLookupsForPledges(Project project, ObservableSet<LHProtos.Pledge> pledges,
+                                                           List<Peer> peers, boolean checkingAllPledges,
+                                                           CompletableFuture<Set<LHProtos.Pledge>> result) {
         executor.checkOnThread();
+        // The given set may be live, so fix what we're testing now.
+        final Set<LHProtos.Pledge> testedPledges = new HashSet<>(pledges);
+        final List<CompletableFuture<LHProtos.Pledge>> futures = new ArrayList<>(testedPledges.size());
+        final BatchingUTXOSource utxoSource;
         try {
             // The multiplexor issues the same query to multiple peers and verifies they're all consistent.
             log.info("Querying {} peers", peers.size());
-            PeerUTXOMultiplexor multiplexor = new PeerUTXOMultiplexor(peers);
+            PeerUTXOMultiplexor multiplexor = utxoQueryQuorum > 0 ?
+                    new PeerUTXOMultiplexor(peers, Math.min(utxoQueryQuorum, peers.size()), utxoPeerLatencies) :
+                    new PeerUTXOMultiplexor(peers);
             // The batcher queues up queries from project.verifyPledge and combines them into a single query, to
             // speed things up and minimise network traffic.
-            BatchingUTXOSource utxoSource = new BatchingUTXOSource(multiplexor);
-            List<CompletableFuture<LHProtos.Pledge>> futures = new ArrayList<>(pledges.size());
-            for (LHProtos.Pledge pledge : pledges)
-                futures.add(project.verifyPledge(utxoSource, pledge));
-            try {
-                utxoSource.run();   // Actually send the query.
-                futureOfFutures(futures).get(10, TimeUnit.SECONDS);
-            } catch (TimeoutException e) {
-                // Some peer(s) didn't get back to us fast enough, they'll be filtered out below.
-            }
-            Set<TransactionOutPoint> allOutpoints = checkingAllPledges ? new HashSet<>() : getAllPledgedOutPointsFor(project);
+            utxoSource = new BatchingUTXOSource(multiplexor);
+            for (LHProtos.Pledge pledge : testedPledges)
+                futures.add(project.verifyPledge(utxoSource, pledge, scriptVerificationPool));
+            utxoSource.run();   // Actually send the query.
+        } catch (RuntimeException e) {
+            // Make sure a query that failed to start doesn't hold up the queue.
+            log.error("Error starting UTXO lookups", e);
+            markAsErrored(project, e);
+            result.completeExceptionally(e);
+            return CompletableFuture.completedFuture(null);
+        }
+        // Some peer(s) may not get back to us fast enough, they'll be filtered out when processing. Large batches are
+        // sent as several queries that go out one after another, so each of them gets the full timeout.
+        CompletableFuture<Void> answered = new CompletableFuture<>();
+        futureOfFutures(futures).whenComplete((v, ex) -> answered.complete(null));
+        schedule(() -> answered.complete(null), UTXO_QUERY_TIMEOUT_SECS * Math.max(1, utxoSource.getQueryCount()), TimeUnit.SECONDS);
+        return answered.thenRunAsync(() -> processUTXOLookups(project, testedPledges, futures, checkingAllPledges, result), executor);
+    }
+
+    private void processUTXOLookups(Project project, Set<LHProtos.Pledge> testedPledges,
+                                    List<CompletableFuture<LHProtos.Pledge>> futures, boolean checkingAllPledges,
+                                    CompletableFuture<Set<LHProtos.Pledge>> result) {
+        executor.checkOnThread();
+        try {
+            Set<TransactionOutPoint> allOutpoints = checkingAllPledges ? new HashSet<>() : getAllPledgedOutPointsFor(project, testedPledges);
             List<LHProtos.Pledge> verifiedPledges = new ArrayList<>(futures.size());
+            // Pledges we got an answer for. Ones that timed out are left as they were, rather than treated as invalid.
+            Set<LHProtos.Pledge> answeredPledges = new HashSet<>(testedPledges);
+            final int height = wallet.getLastBlockSeenHeight();
+            boolean filterGrew = false;
+            // The futures were created by iterating over the same set, so they're in the same order.
+            Iterator<LHProtos.Pledge> testedIterator = testedPledges.iterator();
             for (CompletableFuture<LHProtos.Pledge> future : futures) {
+                final LHProtos.Pledge tested = testedIterator.next();
                 if (!future.isDone()) {
                     log.warn("getutxo lookup failed or timed out: {}", future);
+                    answeredPledges.remove(tested);
+                    projectsToRecheck.add(project);
                     continue;
                 }
                 try {
@@ -501,27 +713,68 @@ public class LighthouseBackend extends AbstractBlockChainListener {
                         allOutpoints.add(input.getOutpoint());
                     }
                     verifiedPledges.add(pledge);
+                    filterGrew |= utxoStatusCache.record(project.getID(), mapList(tx.getInputs(), TransactionInput::getOutpoint), true, height);
                 } catch (ExecutionException e) {
                     // Unless pledge was merely revoked, we will expose the error to the UI and stop processing pledges.
                     // We don't continue and try to process the rest.
                     if (!(getRootCause(e) instanceof Ex.UnknownUTXO))
                         throw e;
+                    // Only remember the outputs the peers said were gone: the others may well still be unspent.
+                    List<TransactionOutPoint> missing = ((Ex.UnknownUTXO) getRootCause(e)).missing;
+                    if (!missing.isEmpty())
+                        utxoStatusCache.record(project.getID(), missing, false, height);
                 }
             }
-            log.info("{} of {} pledges verified (were not revoked/claimed)", verifiedPledges.size(), pledges.size());
-            syncPledges(project, pledges, verifiedPledges);
+            if (filterGrew)
+                peerGroup.recalculateFastCatchupAndFilter(PeerGroup.FilterRecalculateMode.SEND_IF_CHANGED);
+            log.info("{} of {} pledges verified (were not revoked/claimed)", verifiedPledges.size(), answeredPledges.size());
+            syncPledges(project, answeredPledges, verifiedPledges);
             markAsCheckDone(project);
             result.complete(new HashSet<>(verifiedPledges));
-        } catch (InterruptedException | ExecutionException e) {
+        } catch (InterruptedException | ExecutionException | VerificationException e) {
             log.error("Error looking up UTXOs", e);
             markAsErrored(project, e);
             result.completeExceptionally(e);
         }
     }
 
-    private HashSet<TransactionOutPoint> getAllPledgedOutPointsFor(Project project) {
+    // Runs the given task on the backend thread after the delay.
+    private void schedule(Runnable runnable, long delay, TimeUnit unit) {
+        if (executor instanceof AffinityExecutor.ServiceAffinityExecutor)
+            ((AffinityExecutor.ServiceAffinityExecutor) executor).service.schedule(runnable, delay, unit);
+        else
+            TIMER.schedule(() -> executor.execute(runnable), delay, unit);
+    }
+
+    // Only used when the backend isn't running on its own scheduled executor, e.g. in some unit tests.
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "LighthouseBackend timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Returns null if the pledge is malformed.
+    @Nullable
+    private static List<TransactionOutPoint> getInputOutPoints(Project project, LHProtos.Pledge pledge) {
+        try {
+            return mapList(project.fastSanityCheck(pledge).getInputs(), TransactionInput::getOutpoint);
+        } catch (VerificationException e) {
+            return null;
+        }
+    }
+
+    // True if we don't know what happened to some of the pledge's inputs since it was last checked.
+    private boolean needsRecheck(Project project, LHProtos.Pledge pledge) {
+        List<TransactionOutPoint> outPoints = getInputOutPoints(project, pledge);
+        return outPoints == null || !utxoStatusCache.isKnown(outPoints);
+    }
+
+    // The outpoints spent by the open pledges of the project, except for the given ones.
+    private HashSet<TransactionOutPoint> getAllPledgedOutPointsFor(Project project, Set<LHProtos.Pledge> excluding) {
         HashSet<TransactionOutPoint> results = new HashSet<>();
         for (LHProtos.Pledge pledge : getOpenPledgesFor(project)) {
+            if (excluding.contains(pledge))
+                continue;
             Transaction tx = project.fastSanityCheck(pledge);
             for (TransactionInput input : tx.getInputs()) {
                 TransactionOutPoint op = input.getOutpoint();
@@ -540,22 +793,33 @@ public class LighthouseBackend extends AbstractBlockChainListener {
         CompletableFuture<Void> future = new CompletableFuture<>();
         executor.execute(() -> {
             markAsInProgress(project);
-            project.getStatus(wallet, null).whenCompleteAsync((status, ex) -> {
+            project.getStatusUpdate(wallet, null, serverStatusTags.get(project), serverConnections).whenCompleteAsync((update, ex) -> {
                 if (ex != null) {
+                    serverStatusTags.remove(project);
                     markAsErrored(project, ex);
                     future.completeExceptionally(ex);
                 } else {
-                    // Status contains a new list of pledges. We should update our own observable list by touching it
-                    // as little as possible. This ensures that as updates flow through to the UI any animations look
-                    // good (as opposed to total replacement which would animate poorly).
-                    log.info("Processing project status:\n{}", status);
-                    syncPledges(project, new HashSet<>(status.getPledgesList()), status.getPledgesList());
-                    // Server's view of the truth overrides our own for UI purposes, as we might have failed to
-                    // observe the contract/claim tx if the user imported the project post-claim.
-                    if (status.hasClaimedBy() && diskManager.getProjectState(project).state != ProjectState.CLAIMED) {
-                        diskManager.setProjectState(project, new ProjectStateInfo(ProjectState.CLAIMED,
-                                new Sha256Hash(status.getClaimedBy().toByteArray())));
+                    LHProtos.ProjectStatus status = update.status;
+                    if (status == null) {
+                        log.info("Project status not modified since last check");
+                    } else {
+                        // Status contains a new list of pledges. We should update our own observable list by touching
+                        // it as little as possible. This ensures that as updates flow through to the UI any
+                        // animations look good (as opposed to total replacement which would animate poorly).
+                        log.info("Processing project status{}:\n{}", update.isDelta ? " delta" : "", status);
+                        List<LHProtos.Pledge> pledges = update.isDelta ? applyStatusDelta(project, update) : status.getPledgesList();
+                        syncPledges(project, new HashSet<>(pledges), pledges);
+                        // Server's view of the truth overrides our own for UI purposes, as we might have failed to
+                        // observe the contract/claim tx if the user imported the project post-claim.
+                        if (status.hasClaimedBy() && diskManager.getProjectState(project).state != ProjectState.CLAIMED) {
+                            diskManager.setProjectState(project, new ProjectStateInfo(ProjectState.CLAIMED,
+                                    new Sha256Hash(status.getClaimedBy().toByteArray())));
+                        }
                     }
+                    if (update.etag != null)
+                        serverStatusTags.put(project, update.etag);
+                    else
+                        serverStatusTags.remove(project);
                     markAsCheckDone(project);
                     future.complete(null);
                 }
@@ -564,6 +828,20 @@ public class LighthouseBackend extends AbstractBlockChainListener {
         return future;
     }
 
+    // Rebuilds the server's pledge list from what we already have plus the delta, so it can go through syncPledges
+    // like a full status would.
+    private List<LHProtos.Pledge> applyStatusDelta(Project project, Project.StatusUpdate update) {
+        executor.checkOnThread();
+        Set<Sha256Hash> removed = new HashSet<>(update.removed);
+        List<LHProtos.Pledge> result = new ArrayList<>();
+        for (LHProtos.Pledge pledge : getOpenPledgesFor(project)) {
+            if (!removed.contains(getPledgeHash(pledge)))
+                result.add(pledge);
+        }
+        result.addAll(update.status.getPledgesList());
+        return result;
+    }
+
     /** Invokes a manual refresh by going back to the server. Can be called from any thread. */
     public CompletableFuture<Void> refreshProjectStatusFromServer(Project project) {
         return lookupPledgesFromServer(project);
@@ -572,11 +850,9 @@ public class LighthouseBackend extends AbstractBlockChainListener {
     private void syncPledges(Project forProject, Set<LHProtos.Pledge> testedPledges, List<LHProtos.Pledge> verifiedPledges) {
         executor.checkOnThread();
         final ObservableSet<LHProtos.Pledge> curOpenPledges = getOpenPledgesFor(forProject);
-
-        // Build a map of pledgehash->pledge so we can dedupe server-scrubbed pledges.
-        Map<Sha256Hash, LHProtos.Pledge> hashes = curOpenPledges.stream().collect(
-                toMap(p -> Sha256Hash.create(p.toByteArray()), p -> p)
-        );
+        final boolean serverAssistedClient = forProject.getPaymentURL() != null && mode == Mode.CLIENT;
+        // What was open before we started, to find pledges the server no longer reports.
+        final Set<LHProtos.Pledge> prevOpenPledges = serverAssistedClient ? new HashSet<>(curOpenPledges) : null;
 
         // Try and update openPledges/claimedPledges with minimal touching, so animations work right.
 
@@ -591,14 +867,16 @@ public class LighthouseBackend extends AbstractBlockChainListener {
             // Remove if this is a scrubbed version of a pledge we already have i.e. because we created it, uploaded it
             // and are now seeing it come back to us.
             newlyOpen.removeIf(pledge ->
-                pledge.hasOrigHash() && hashes.get(hashFromPledge(pledge)) != null
+                pledge.hasOrigHash() && getOpenPledgeByHash(forProject, hashFromPledge(pledge)) != null
             );
         }
         curOpenPledges.addAll(newlyOpen);
         Set<LHProtos.Pledge> newlyInvalid = new HashSet<>(testedPledges);
         newlyInvalid.removeAll(verifiedPledges);
         curOpenPledges.removeAll(newlyInvalid);
-        if (forProject.getPaymentURL() != null && mode == Mode.CLIENT) {
+        // Tested pledges are now either counted as open or known to be bad, so stop counting them as pending.
+        releasePendingPledges(forProject, testedPledges);
+        if (serverAssistedClient) {
             // Little hack here. In the app when checking a server-assisted project we don't have the same notion of
             // "testedness" so testedPledges always equals verifiedPledges. So, we must remove revoked pledges here
             // manually. A better version in future would record stored server statuses to disk so we can always
@@ -608,9 +886,9 @@ public class LighthouseBackend extends AbstractBlockChainListener {
             // TODO: Save server statuses to disk so we can render them offline and so tested vs verified pledges is meaningful.
 
             // Figure out which pledges are no longer being reported, taking into account scrubbing.
-            Set<LHProtos.Pledge> removedItems = new HashSet<>(hashes.values());
+            Set<LHProtos.Pledge> removedItems = prevOpenPledges;
             for (LHProtos.Pledge pledge : verifiedPledges) {
-                LHProtos.Pledge orig = hashes.get(hashFromPledge(pledge));
+                LHProtos.Pledge orig = getOpenPledgeByHash(forProject, getPledgeHash(pledge));
                 if (orig != null)
                     removedItems.remove(orig);
             }
@@ -620,6 +898,7 @@ public class LighthouseBackend extends AbstractBlockChainListener {
             }
         }
         // A pledge that's missing might be claimed.
+        Set<LHProtos.Pledge> revoked = new HashSet<>(newlyInvalid);
         if (forProject.getPaymentURL() == null || mode == Mode.SERVER) {
             Transaction claim = getClaimForProject(forProject);
             if (claim != null) {
@@ -627,8 +906,10 @@ public class LighthouseBackend extends AbstractBlockChainListener {
                 newlyClaimed.removeIf(pledge -> !LHUtils.pledgeAppearsInClaim(forProject, pledge, claim));
                 ObservableSet<LHProtos.Pledge> cpf = getClaimedPledgesFor(forProject);
                 cpf.addAll(newlyClaimed);
+                revoked.removeAll(cpf);
             }
         }
+        forgetStoredPledges(forProject, revoked);
     }
 
     private ObservableSet<LHProtos.Pledge> getClaimedPledgesFor(Project forProject) {
@@ -636,11 +917,30 @@ public class LighthouseBackend extends AbstractBlockChainListener {
         ObservableSet<LHProtos.Pledge> result = claimedPledges.get(forProject);
         if (result == null) {
             result = FXCollections.observableSet();
+            result.addListener((SetChangeListener<LHProtos.Pledge>) change -> {
+                updatePledgeIndex(forProject, change, true);
+                updateTotals(forProject, change, true);
+            });
             claimedPledges.put(forProject, result);
         }
         return result;
     }
 
+    private void updateTotals(Project project, SetChangeListener.Change<? extends LHProtos.Pledge> change, boolean claimed) {
+        executor.checkOnThread();
+        PledgeTotals totals = pledgeTotals.getOrDefault(project, PledgeTotals.EMPTY);
+        if (change.wasAdded())
+            totals = totals.plus(change.getElementAdded().getTotalInputValue(), 1, claimed);
+        if (change.wasRemoved())
+            totals = totals.plus(-change.getElementRemoved().getTotalInputValue(), -1, claimed);
+        pledgeTotals.put(project, totals);
+    }
+
+    /** Returns the current totals of the open and claimed pledges for the project. Can be called from any thread. */
+    public PledgeTotals getPledgeTotals(Project project) {
+        return pledgeTotals.getOrDefault(project, PledgeTotals.EMPTY);
+    }
+
     @Nullable
     private Transaction getClaimForProject(Project forProject) {
         ProjectStateInfo state = diskManager.getProjectState(forProject);
@@ -709,6 +1009,10 @@ public class LighthouseBackend extends AbstractBlockChainListener {
         ObservableSet<LHProtos.Pledge> result = openPledges.get(forProject);
         if (result == null) {
             result = FXCollections.observableSet();
+            result.addListener((SetChangeListener<LHProtos.Pledge>) change -> {
+                updatePledgeIndex(forProject, change, false);
+                updateTotals(forProject, change, false);
+            });
             openPledges.put(forProject, result);
         }
         return result;
@@ -722,19 +1026,27 @@ public class LighthouseBackend extends AbstractBlockChainListener {
         return bindTotalPledgedProperty(mergeSets(one, two));
     }
 
+    /**
+     * Like {@link #makeTotalPledgedProperty(Project, AffinityExecutor)}, but doesn't wait for the backend. The property
+     * reads zero until the pledges have been mirrored, after which it is kept up to date on the given executor.
+     */
+    public LongProperty makeTotalPledgedPropertyAsync(Project project, AffinityExecutor executor) {
+        LongProperty result = new SimpleLongProperty(0);
+        this.executor.execute(() -> {
+            ObservableSet<LHProtos.Pledge> one = ObservableMirrors.mirrorSet(getOpenPledgesFor(project), executor);
+            ObservableSet<LHProtos.Pledge> two = ObservableMirrors.mirrorSet(getClaimedPledgesFor(project), executor);
+            // Queued before any change to the mirrors can be, so none are missed.
+            executor.execute(() -> result.bind(bindTotalPledgedProperty(mergeSets(one, two))));
+        });
+        return result;
+    }
+
     public ObservableMap<Project, CheckStatus> mirrorCheckStatuses(AffinityExecutor executor) {
         return this.executor.fetchFrom(() -> ObservableMirrors.mirrorMap(checkStatuses, executor));
     }
 
     public Coin fetchTotalPledged(Project project) {
-        return executor.fetchFrom(() -> {
-            Coin amount = Coin.ZERO;
-            for (LHProtos.Pledge pledge : getOpenPledgesFor(project))
-                amount = amount.add(Coin.valueOf(pledge.getTotalInputValue()));
-            for (LHProtos.Pledge pledge : getClaimedPledgesFor(project))
-                amount = amount.add(Coin.valueOf(pledge.getTotalInputValue()));
-            return amount;
-        });
+        return getPledgeTotals(project).getTotalValue();
     }
 
     /** Returns a property calculated from the given list, with no special mirroring setup. */
@@ -743,31 +1055,58 @@ public class LighthouseBackend extends AbstractBlockChainListener {
         return new SimpleLongProperty(0) {
             private ObservableSet<LHProtos.Pledge> pledgesRef = pledges;
 
-            // This should probably be done differently (as a lazy binding?) but I doubt it matters.
+            // Sum once up front and then adjust by each change, rather than re-summing every time.
             {
-                pledgesRef.addListener((InvalidationListener) o -> {
-                    update();
-                });
-                update();
-            }
-
-            private void update() {
                 long total = 0;
                 for (LHProtos.Pledge pledge : pledgesRef) {
                     total += pledge.getTotalInputValue();
                 }
                 set(total);
+                pledgesRef.addListener((SetChangeListener<LHProtos.Pledge>) change -> {
+                    long delta = 0;
+                    if (change.wasAdded())
+                        delta += change.getElementAdded().getTotalInputValue();
+                    if (change.wasRemoved())
+                        delta -= change.getElementRemoved().getTotalInputValue();
+                    set(get() + delta);
+                });
             }
         };
     }
 
+    @Override
+    public boolean isTransactionRelevant(Transaction tx) throws ScriptException {
+        // Can be called on any thread.
+        return utxoStatusCache.isSpentBy(tx);
+    }
+
+    @Override
+    public void receiveFromBlock(Transaction tx, StoredBlock block, AbstractBlockChain.NewBlockType blockType,
+                                 int relativityOffset) throws VerificationException {
+        observeSpends(tx);
+    }
+
+    private void observeSpends(Transaction tx) {
+        executor.checkOnThread();
+        for (String projectID : utxoStatusCache.markSpentBy(tx)) {
+            Project project = diskManager.getProjectById(projectID);
+            if (project == null) continue;
+            log.info("Transaction {} spends a pledge for {}, will recheck on the next block", tx.getHash(), project);
+            projectsToRecheck.add(project);
+        }
+    }
+
+    // Every so often check all pledges rather than just the ones we saw being spent, in case we missed a spend, e.g.
+    // because of a re-org or a peer that didn't honour our Bloom filter.
+    private static final int FULL_RECHECK_INTERVAL_BLOCKS = 144;
+
     @Override
     public void notifyNewBestBlock(StoredBlock block) throws VerificationException {
         executor.checkOnThread();
-        // TODO: Fix this so we just watch for revocation transactions via Bloom filtering.
         // Don't bother with pointless recalculations until we're caught up with the chain tip.
         if (block.getHeight() > peerGroup.getMostCommonChainHeight() - 2) {
-            log.info("New block found, refreshing pledges");
+            final boolean recheckAll = block.getHeight() % FULL_RECHECK_INTERVAL_BLOCKS == 0;
+            log.info("New block found, refreshing {} pledges", recheckAll ? "all" : "possibly spent");
             for (Project project : diskManager.getProjects()) {
                 // In the app, use a new block as a hint to go back and ask the server for an update (e.g. in case
                 // any pledges were revoked). This also ensures the project page can be left open and it'll update from
@@ -775,10 +1114,11 @@ public class LighthouseBackend extends AbstractBlockChainListener {
                 // etc.
                 if (mode == Mode.CLIENT && project.getPaymentURL() != null) {
                     jitteredServerRequery(project);
-                } else {
-                    jitteredP2PRequery(project);
+                } else if (recheckAll || projectsToRecheck.contains(project)) {
+                    jitteredP2PRequery(project, recheckAll);
                 }
             }
+            projectsToRecheck.clear();
         }
     }
 
@@ -794,11 +1134,19 @@ public class LighthouseBackend extends AbstractBlockChainListener {
         this.maxJitterSeconds = maxJitterSeconds;
     }
 
-    private void jitteredP2PRequery(Project project) {
+    private void jitteredP2PRequery(Project project, boolean recheckAll) {
         jitteredExecute(() -> {
             ObservableSet<LHProtos.Pledge> pledgesFor = diskManager.getPledgesFor(project);
-            if (pledgesFor != null)
-                checkPledgesAgainstP2PNetwork(project, pledgesFor, true /* remove invalid as we're checking all pledges */);
+            if (pledgesFor == null)
+                return;
+            if (!recheckAll) {
+                Set<LHProtos.Pledge> possiblySpent = new HashSet<>();
+                for (LHProtos.Pledge pledge : pledgesFor)
+                    if (needsRecheck(project, pledge))
+                        possiblySpent.add(pledge);
+                pledgesFor = FXCollections.observableSet(possiblySpent);
+            }
+            checkPledgesAgainstP2PNetwork(project, pledgesFor, recheckAll);
         }, 15);
     }
 
@@ -856,17 +1204,37 @@ public class LighthouseBackend extends AbstractBlockChainListener {
                     result.completeExceptionally(ex);
                 } else {
                     // Check we don't accept too many pledges. This can happen if there's a buggy client or if users
-                    // are submitting pledges more or less in parallel - running on the backend thread here should
-                    // eliminate any races from that and ensure only one pledge wins.
-                    Coin total = fetchTotalPledged(project);
-                    if (total.add(Coin.valueOf(pledge.getTotalInputValue())).isGreaterThan(project.getGoalAmount()))
-                        throw new Ex.GoalExceeded();
+                    // are submitting pledges more or less in parallel. The P2P check finishes asynchronously, so
+                    // pledges still being checked count as well: together with running on the backend thread this
+                    // ensures only one of several competing pledges wins.
+                    final Sha256Hash hash = getPledgeHash(pledge);
+                    Map<Sha256Hash, Long> pending = pendingPledgeValues.computeIfAbsent(project, k -> new HashMap<>());
+                    if (pending.containsKey(hash)) {
+                        // Uploaded again whilst we're still checking it: it's already counted and saved.
+                        result.complete(pledge);
+                        return null;
+                    }
+                    // A re-upload of an open pledge is already counted by fetchTotalPledged.
+                    if (getOpenPledgeByHash(project, hash) == null) {
+                        long pendingTotal = pending.values().stream().mapToLong(Long::longValue).sum();
+                        Coin total = fetchTotalPledged(project).add(Coin.valueOf(pendingTotal));
+                        if (total.add(Coin.valueOf(pledge.getTotalInputValue())).isGreaterThan(project.getGoalAmount())) {
+                            if (pending.isEmpty())
+                                pendingPledgeValues.remove(project);
+                            result.completeExceptionally(new Ex.GoalExceeded());
+                            return null;
+                        }
+                        pending.put(hash, pledge.getTotalInputValue());
+                    }
                     // Once dependencies (if any) are handled, start the check process. This will update openPledges once
-                    // done successfully.
-                    checkPledgeAgainstP2PNetwork(project, pledge);
-                    // Finally, save to disk. This will cause a notification of a new pledge to happen but we'll end
-                    // up ignoring it because we'll see we already loaded and verified it.
-                    savePledge(pledge);
+                    // done successfully, after which the pledge is counted by fetchTotalPledged instead. syncPledges
+                    // drops the reservation in the same step, this only catches checks that never got that far.
+                    checkPledgeAgainstP2PNetwork(project, pledge).whenCompleteAsync((p, ex2) ->
+                            releasePendingPledges(project, Collections.singleton(pledge)), executor);
+                    // Finally, save to disk and add it to the set of pledges that get rechecked on each new block.
+                    // This will cause a notification of a new pledge to happen but we'll end up ignoring it because
+                    // we're already checking it.
+                    savePledge(project, pledge);
                     result.complete(pledge);
                 }
                 return null;
@@ -877,24 +1245,29 @@ public class LighthouseBackend extends AbstractBlockChainListener {
         return result;
     }
 
-    private static LHProtos.Pledge savePledge(LHProtos.Pledge pledge) {
+    // Drops the reservations submitPledge made for the given pledges, if any.
+    private void releasePendingPledges(Project project, Collection<LHProtos.Pledge> pledges) {
+        executor.checkOnThread();
+        Map<Sha256Hash, Long> pending = pendingPledgeValues.get(project);
+        if (pending == null)
+            return;
+        for (LHProtos.Pledge pledge : pledges)
+            pending.remove(getPledgeHash(pledge));
+        if (pending.isEmpty())
+            pendingPledgeValues.remove(project);
+    }
+
+    private void savePledge(Project project, LHProtos.Pledge pledge) {
+        executor.checkOnThread();
+        checkState(pledgeStore != null, "Pledges are only saved in server mode");
+        log.info("Saving pledge to disk");
+        uncheck(() -> pledgeStore.add(pledge));
+        // The set notifies diskPledgesChanged synchronously, before our own check of the pledge has finished.
+        pledgeBeingSaved = pledge;
         try {
-            // Can be on any thread.
-            final byte[] bits = pledge.toByteArray();
-            Sha256Hash hash = Sha256Hash.create(bits);
-            // This file name is not very helpful for sysadmins. Perhaps if we scrub the metadata enough we can make a
-            // better one, e.g. with the users contact details in.
-            String filename = hash + DiskManager.PLEDGE_FILE_EXTENSION;
-            // Use a temp file and rename to disallow allow partially visible pledges.
-            Path path = AppDirectory.dir().resolve(filename + ".tmp");
-            try (OutputStream stream = new BufferedOutputStream(Files.newOutputStream(path))) {
-                log.info("Saving pledge to disk as {}", filename);
-                stream.write(bits);
-            }
-            Files.move(path, AppDirectory.dir().resolve(filename));
-            return pledge;
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            diskManager.getPledgesOrCreate(project).add(pledge);
+        } finally {
+            pledgeBeingSaved = null;
         }
     }
 
@@ -933,6 +1306,38 @@ public class LighthouseBackend extends AbstractBlockChainListener {
         this.minPeersForUTXOQuery = minPeersForUTXOQuery;
     }
 
+    public int getUTXOQueryQuorum() {
+        return utxoQueryQuorum;
+    }
+
+    /**
+     * Sets how many peers must agree on the answer to a UTXO query before it's accepted. Zero, the default, means all
+     * connected peers are asked and must answer. Any other value means only the quickest peers are asked, so one slow
+     * peer doesn't delay pledge verification.
+     */
+    public void setUTXOQueryQuorum(int utxoQueryQuorum) {
+        checkArgument(utxoQueryQuorum >= 0);
+        this.utxoQueryQuorum = utxoQueryQuorum;
+    }
+
+    public ForkJoinPool getScriptVerificationPool() {
+        return scriptVerificationPool;
+    }
+
+    /** Sets the pool that pledge scripts are verified on, by default the common fork-join pool. */
+    public void setScriptVerificationPool(ForkJoinPool scriptVerificationPool) {
+        this.scriptVerificationPool = checkNotNull(scriptVerificationPool);
+    }
+
+    public ServerConnections getServerConnections() {
+        return serverConnections;
+    }
+
+    /** Sets what project servers are queried through, by default {@link ServerConnections#SHARED}. */
+    public void setServerConnections(ServerConnections serverConnections) {
+        this.serverConnections = checkNotNull(serverConnections);
+    }
+
     public static class ProjectStateInfo {
         public final ProjectState state;
         @Nullable public final Sha256Hash claimedBy;
@@ -322,7 +322,12 @@ public class DiskManager {
         log.info("Attempting to load project file {}", from);
         try (InputStream is = Files.newInputStream(from)) {
             LHProtos.Project proto = LHProtos.Project.parseFrom(is);
-            return new Project(proto);
+            // Cover images can be big, so rather than keeping them all in memory read them again when needed.
+            return new Project(proto, () -> {
+                try (InputStream is2 = Files.newInputStream(from)) {
+                    return LHProtos.Project.parseFrom(is2);
+                }
+            });
         } catch (IOException e) {
             log.error("File appeared in directory but could not be read, ignoring: {}", e.getMessage());
             return null;
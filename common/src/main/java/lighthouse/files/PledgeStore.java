@@ -0,0 +1,193 @@
+package lighthouse.files;
+
+import com.google.common.collect.ImmutableList;
+import lighthouse.protocol.LHProtos;
+import lighthouse.protocol.LHUtils;
+import org.bitcoinj.core.Sha256Hash;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of pledges, used by the server to remember pledges it accepted across restarts without keeping
+ * a file per pledge. The whole log is read into an index keyed by project ID when opened, and every change after that
+ * is a single append. Removals are logged as tombstones: once the log holds more dead records than live ones it is
+ * rewritten from the index.
+ *
+ * Each record is an op byte, a 4 byte length, the payload and a CRC32 of the payload. A torn or corrupted record at
+ * the end of the log (e.g. from a crash half way through a write) is discarded on open.
+ *
+ * Methods are synchronized so the store can be used from any thread.
+ */
+public class PledgeStore implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(PledgeStore.class);
+
+    public static final String FILE_NAME = "pledges.log";
+
+    private static final byte OP_ADD = 1;
+    private static final byte OP_REMOVE = 2;
+    // Don't bother compacting small logs, rewriting them wouldn't save much.
+    private static final int MIN_DEAD_RECORDS_FOR_COMPACTION = 1000;
+
+    private final Path path;
+    private final Map<String, Map<Sha256Hash, LHProtos.Pledge>> pledges = new HashMap<>();
+    private int liveRecords, deadRecords;
+    private DataOutputStream output;
+
+    public PledgeStore(Path path) throws IOException {
+        this.path = path;
+        long validLength = load();
+        if (Files.exists(path) && Files.size(path) > validLength) {
+            log.warn("Discarding {} bytes of damaged data at the end of {}", Files.size(path) - validLength, path);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+        }
+        openForAppend();
+        maybeCompact();
+    }
+
+    // Reads as many good records as possible and returns the offset just after the last one.
+    private long load() throws IOException {
+        if (!Files.exists(path))
+            return 0;
+        final long size = Files.size(path);
+        long offset = 0;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (true) {
+                int op = input.read();
+                if (op == -1)
+                    break;
+                int length = input.readInt();
+                if (length < 0 || length > size - offset)
+                    break;
+                byte[] payload = new byte[length];
+                input.readFully(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if (input.readInt() != (int) crc.getValue())
+                    break;
+                if (op == OP_ADD) {
+                    if (!index(LHProtos.Pledge.parseFrom(payload), Sha256Hash.create(payload)))
+                        deadRecords++;
+                } else if (op == OP_REMOVE) {
+                    // A tombstone is the pledge hash followed by the project ID.
+                    if (length < 32)
+                        break;
+                    String projectID = new String(payload, 32, payload.length - 32, "UTF-8");
+                    // The add record and its tombstone are both garbage now.
+                    deadRecords += unindex(projectID, new Sha256Hash(Arrays.copyOf(payload, 32))) ? 2 : 1;
+                } else {
+                    break;
+                }
+                offset += 1 + 4 + length + 4;
+            }
+        } catch (EOFException e) {
+            // Fall through and report how far we got.
+        }
+        log.info("Loaded {} pledges from {}", liveRecords, path);
+        return offset;
+    }
+
+    private void openForAppend() throws IOException {
+        output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)));
+    }
+
+    private boolean index(LHProtos.Pledge pledge, Sha256Hash hash) {
+        Map<Sha256Hash, LHProtos.Pledge> forProject = pledges.computeIfAbsent(pledge.getProjectId(), id -> new LinkedHashMap<>());
+        if (forProject.putIfAbsent(hash, pledge) != null)
+            return false;
+        liveRecords++;
+        return true;
+    }
+
+    private boolean unindex(String projectID, Sha256Hash hash) {
+        Map<Sha256Hash, LHProtos.Pledge> forProject = pledges.get(projectID);
+        LHProtos.Pledge pledge = forProject == null ? null : forProject.remove(hash);
+        if (pledge == null)
+            return false;
+        liveRecords--;
+        return true;
+    }
+
+    private void append(byte op, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        output.writeByte(op);
+        output.writeInt(payload.length);
+        output.write(payload);
+        output.writeInt((int) crc.getValue());
+        output.flush();
+    }
+
+    /** Stores the given pledge, returning false if it was already present. */
+    public synchronized boolean add(LHProtos.Pledge pledge) throws IOException {
+        byte[] bits = pledge.toByteArray();
+        if (!index(pledge, Sha256Hash.create(bits)))
+            return false;
+        append(OP_ADD, bits);
+        return true;
+    }
+
+    /** Forgets the given pledge, returning false if it wasn't present. */
+    public synchronized boolean remove(LHProtos.Pledge pledge) throws IOException {
+        Sha256Hash hash = LHUtils.pledgeHash(pledge);
+        if (!unindex(pledge.getProjectId(), hash))
+            return false;
+        deadRecords += 2;
+        byte[] id = pledge.getProjectId().getBytes("UTF-8");
+        byte[] payload = Arrays.copyOf(hash.getBytes(), 32 + id.length);
+        System.arraycopy(id, 0, payload, 32, id.length);
+        append(OP_REMOVE, payload);
+        maybeCompact();
+        return true;
+    }
+
+    /** Returns the stored pledges for the given project, in the order they were added. */
+    public synchronized List<LHProtos.Pledge> getPledges(String projectID) {
+        Map<Sha256Hash, LHProtos.Pledge> forProject = pledges.get(projectID);
+        return forProject == null ? ImmutableList.of() : ImmutableList.copyOf(forProject.values());
+    }
+
+    public synchronized int size() {
+        return liveRecords;
+    }
+
+    private void maybeCompact() throws IOException {
+        if (deadRecords >= MIN_DEAD_RECORDS_FOR_COMPACTION && deadRecords > liveRecords)
+            compact();
+    }
+
+    /** Rewrites the log so it contains only the live pledges. */
+    public synchronized void compact() throws IOException {
+        log.info("Compacting {}: {} live and {} dead records", path, liveRecords, deadRecords);
+        output.close();
+        // Write to a temp file and rename so a crash part way through leaves the old log intact.
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)));
+        try {
+            for (Map<Sha256Hash, LHProtos.Pledge> forProject : pledges.values())
+                for (LHProtos.Pledge pledge : forProject.values())
+                    append(OP_ADD, pledge.toByteArray());
+        } finally {
+            output.close();
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        deadRecords = 0;
+        openForAppend();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        output.close();
+    }
+}
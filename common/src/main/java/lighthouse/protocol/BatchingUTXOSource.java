@@ -2,65 +2,166 @@ package lighthouse.protocol;
 
 import org.bitcoinj.core.TransactionOutPoint;
 import org.bitcoinj.core.TransactionOutput;
+import org.bitcoinj.core.UTXOsMessage;
 import org.bitcoinj.core.Utils;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkArgument;
 
 /**
- * A UTXOSource that overlays a real source, but queues up queries until told it can proceed and then queries all of
- * them at once. This is useful because the p2p protocol can only manage one in flight query at once.
+ * A UTXOSource that overlays a real source, but queues up queries until told it can proceed and then sends them in
+ * as few getutxos messages as possible. This is useful because the p2p protocol can only manage one in flight query
+ * at once.
+ *
+ * Very large batches are split into chunks of a bounded number of outpoints, as peers refuse overly large queries.
+ * Chunks never split up the outpoints of a single query, and each query's future completes as soon as the chunk
+ * containing it was answered. Every chunk goes to the same peers, so the consistency checks done by the
+ * {@link PeerUTXOMultiplexor} still apply to all of them. Sources that can cope with several queries at once can be
+ * given a higher limit on the number of chunks in flight. Outpoints the peers don't have come back as nulls.
  */
 public class BatchingUTXOSource implements UTXOSource, Runnable {
-    private int totalOutpoints = 0;
+    // Bitcoin XT refuses getutxos messages asking about more outpoints than this.
+    public static final int DEFAULT_MAX_OUTPOINTS_PER_QUERY = 100;
+    // Peer.getUTXOs refuses to start a query whilst another is outstanding.
+    public static final int DEFAULT_MAX_QUERIES_IN_FLIGHT = 1;
+
     private static class Element {
         private List<TransactionOutPoint> queued = new ArrayList<>();
         private CompletableFuture<List<TransactionOutput>> future = new CompletableFuture<>();
     }
+    private static class Chunk {
+        private List<TransactionOutPoint> outPoints = new ArrayList<>();
+        private List<Element> elements = new ArrayList<>();
+    }
     private List<Element> elements = new ArrayList<>();
-    private PeerUTXOMultiplexor multiplexor;
+    private final Function<List<TransactionOutPoint>, CompletableFuture<UTXOsMessage>> query;
+    private final int maxOutPointsPerQuery, maxQueriesInFlight;
+
+    // Guarded by this, as chunks complete on network threads.
+    private final Deque<Chunk> pending = new ArrayDeque<>();
+    private int inFlight;
+    private int queryCount;
 
     public BatchingUTXOSource(PeerUTXOMultiplexor multiplexor) {
-        this.multiplexor = multiplexor;
+        this(multiplexor::query, DEFAULT_MAX_OUTPOINTS_PER_QUERY, DEFAULT_MAX_QUERIES_IN_FLIGHT);
+    }
+
+    /**
+     * Creates a batcher that sends the combined queries to the given function, which should behave like
+     * {@link PeerUTXOMultiplexor#query(List)}.
+     */
+    public BatchingUTXOSource(Function<List<TransactionOutPoint>, CompletableFuture<UTXOsMessage>> query,
+                              int maxOutPointsPerQuery, int maxQueriesInFlight) {
+        checkArgument(maxOutPointsPerQuery > 0);
+        checkArgument(maxQueriesInFlight > 0);
+        this.query = query;
+        this.maxOutPointsPerQuery = maxOutPointsPerQuery;
+        this.maxQueriesInFlight = maxQueriesInFlight;
     }
 
     @Override
     public CompletableFuture<List<TransactionOutput>> getUTXOs(List<TransactionOutPoint> outPoints) {
         Element element = new Element();
         element.queued.addAll(outPoints);
-        totalOutpoints += outPoints.size();
         elements.add(element);
         return element.future;
     }
 
     @Override
     public void run() {
-        List<TransactionOutPoint> all = new ArrayList<>(totalOutpoints);
-        for (Element element : elements) all.addAll(element.queued);
-        if (all.isEmpty()) return;
-        multiplexor.query(all).handle((result, ex) -> {
+        List<Chunk> chunks = new ArrayList<>();
+        Chunk chunk = new Chunk();
+        for (Element element : elements) {
+            // An element bigger than the limit gets a chunk of its own, we can't do better than that.
+            if (!chunk.elements.isEmpty() && chunk.outPoints.size() + element.queued.size() > maxOutPointsPerQuery) {
+                chunks.add(chunk);
+                chunk = new Chunk();
+            }
+            chunk.elements.add(element);
+            chunk.outPoints.addAll(element.queued);
+        }
+        if (!chunk.elements.isEmpty())
+            chunks.add(chunk);
+        elements = new ArrayList<>();
+        synchronized (this) {
+            pending.addAll(chunks);
+            queryCount = chunks.size();
+        }
+        sendMore();
+    }
+
+    /** Returns how many queries the last call to {@link #run()} split the batch into. */
+    public synchronized int getQueryCount() {
+        return queryCount;
+    }
+
+    private void sendMore() {
+        List<Chunk> toSend = new ArrayList<>();
+        synchronized (this) {
+            while (inFlight < maxQueriesInFlight && !pending.isEmpty()) {
+                toSend.add(pending.poll());
+                inFlight++;
+            }
+        }
+        for (Chunk chunk : toSend)
+            send(chunk);
+    }
+
+    private void send(Chunk chunk) {
+        CompletableFuture<UTXOsMessage> future;
+        if (chunk.outPoints.isEmpty()) {
+            future = CompletableFuture.completedFuture(null);
+        } else {
+            try {
+                future = query.apply(chunk.outPoints);
+            } catch (RuntimeException e) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+            }
+        }
+        future.handle((result, ex) -> {
             if (ex != null) {
-                for (Element element : elements) {
-                    element.future.completeExceptionally(ex);
+                // No point asking about the rest, the whole batch is going to be treated as failed anyway.
+                List<Chunk> abandoned;
+                synchronized (this) {
+                    abandoned = new ArrayList<>(pending);
+                    pending.clear();
                 }
+                fail(chunk, ex);
+                for (Chunk c : abandoned)
+                    fail(c, ex);
             } else {
-                ListIterator<Element> iterator = elements.listIterator();
-                // Walk through each element in the hitmap, matching to the queried elements.
-                int cursor = 0;
-                for (int i = 0; i < all.size();) {
-                    Element element = iterator.next();
-                    List<TransactionOutput> results = new ArrayList<>();
-                    for (int j = 0; j < element.queued.size(); j++) {
-                        boolean hit = Utils.checkBitLE(result.getHitMap(), i++);
-                        if (hit)
-                            results.add(result.getOutputs().get(cursor++));
-                    }
-                    element.future.complete(results);
-                }
+                complete(chunk, result);
+            }
+            synchronized (this) {
+                inFlight--;
             }
+            sendMore();
             return null;
         });
     }
+
+    private static void fail(Chunk chunk, Throwable ex) {
+        for (Element element : chunk.elements)
+            element.future.completeExceptionally(ex);
+    }
+
+    private static void complete(Chunk chunk, UTXOsMessage result) {
+        // Walk through each element in the hitmap, matching to the queried elements.
+        int i = 0, cursor = 0;
+        for (Element element : chunk.elements) {
+            List<TransactionOutput> results = new ArrayList<>();
+            for (int j = 0; j < element.queued.size(); j++) {
+                boolean hit = Utils.checkBitLE(result.getHitMap(), i++);
+                results.add(hit ? result.getOutputs().get(cursor++) : null);
+            }
+            element.future.complete(results);
+        }
+    }
 }
@@ -1,5 +1,11 @@
 package lighthouse.protocol;
 
+import com.google.common.collect.ImmutableList;
+import org.bitcoinj.core.TransactionOutPoint;
+
+import javax.annotation.Nullable;
+import java.util.List;
+
 // Gather all exception definitions in one file, for convenience.
 public class Ex extends RuntimeException {
     public static class NoTransactionData extends Ex {}
@@ -16,6 +22,17 @@ public class Ex extends RuntimeException {
     }
     public static class OutputMismatch extends BadTX {}
     public static class UnknownUTXO extends BadTX {
+        // The inputs the UTXO source said were not in the UTXO set. Empty if it didn't say which.
+        public final List<TransactionOutPoint> missing;
+
+        public UnknownUTXO() {
+            this(ImmutableList.of());
+        }
+
+        public UnknownUTXO(List<TransactionOutPoint> missing) {
+            this.missing = missing;
+        }
+
         @Override
         public String getMessage() {
             return "Unknown UTXO";
@@ -61,4 +78,24 @@ public class Ex extends RuntimeException {
         }
     }
     public static class GoalExceeded extends Ex {}
+
+    // Used when a project that was loaded without its cover image can't be read back as it was, e.g. because the file
+    // was changed or deleted since. The cause is null if it was read but has a different hash now.
+    public static class ProjectReloadFailed extends Ex {
+        public final String projectID;
+
+        public ProjectReloadFailed(String projectID, @Nullable Throwable cause) {
+            this.projectID = projectID;
+            if (cause != null)
+                initCause(cause);
+        }
+
+        @Override
+        public String getMessage() {
+            if (getCause() != null)
+                return "Could not reload project " + projectID + ": " + getCause();
+            else
+                return "Project " + projectID + " has changed since it was loaded";
+        }
+    }
 }
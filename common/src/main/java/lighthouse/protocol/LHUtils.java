@@ -1,6 +1,8 @@
 package lighthouse.protocol;
 
 import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -172,6 +174,12 @@ public class LHUtils {
     public static final String HTTP_PATH_PREFIX = "/_lighthouse/crowdfund";
     public static final String HTTP_PROJECT_PATH = "/project/";
     public static final int HTTP_LOCAL_TEST_PORT = 13765;
+    // Delta encoding of project statuses, loosely following RFC 3229. A client sends the ETag of the last status it
+    // saw plus "A-IM: lighthouse-delta", and the server may answer 226 with only the pledges added since then and the
+    // hashes of removed pledges listed in a header.
+    public static final String HTTP_DELTA_IM = "lighthouse-delta";
+    public static final String HTTP_REMOVED_PLEDGES_HEADER = "X-Lighthouse-Removed";
+    public static final int HTTP_IM_USED = 226;
 
     public static String makeServerPath(String name, String projectID) {
         return "https://" + name + HTTP_PATH_PREFIX + HTTP_PROJECT_PATH + projectID;
@@ -218,11 +226,25 @@ public class LHUtils {
         return result;
     }
 
+    // Pledge protobufs are immutable and the same objects get hashed over and over (scrubbing, syncing, revocation
+    // checks ...) so we remember the hash of each one for as long as it's alive. Weak keys are compared by identity.
+    private static final Cache<LHProtos.Pledge, Sha256Hash> pledgeHashes = CacheBuilder.newBuilder().weakKeys().build();
+
+    /** Returns the hash of the serialized pledge protobuf, computing it only once per pledge object. */
+    public static Sha256Hash pledgeHash(LHProtos.Pledge pledge) {
+        Sha256Hash hash = pledgeHashes.getIfPresent(pledge);
+        if (hash == null) {
+            hash = Sha256Hash.create(pledge.toByteArray());
+            pledgeHashes.put(pledge, hash);
+        }
+        return hash;
+    }
+
     /** Either hashes the given pledge protobuf or returns the hash it claims to have been originally. */
     public static Sha256Hash hashFromPledge(LHProtos.Pledge pledge) {
         if (pledge.hasOrigHash())
             return new Sha256Hash(pledge.getOrigHash().toByteArray());
         else
-            return Sha256Hash.create(pledge.toByteArray());
+            return pledgeHash(pledge);
     }
 }
@@ -0,0 +1,43 @@
+package lighthouse.protocol;
+
+import org.bitcoinj.core.Peer;
+import org.bitcoinj.core.PeerAddress;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps a smoothed record of how long peers take to answer UTXO queries, so the quickest and most reliable ones can
+ * be asked first. Peers that fail or disagree with the others are charged a large penalty instead. Peers we have not
+ * heard from yet are treated as fast so they get a chance. Thread safe.
+ */
+public class PeerLatencyTracker {
+    // Weight given to the newest sample.
+    private static final double ALPHA = 0.3;
+    private static final long PENALTY_MSEC = 10_000;
+
+    private final Map<PeerAddress, Double> latencies = new HashMap<>();
+
+    public synchronized void recordLatency(Peer peer, long msec) {
+        latencies.merge(peer.getAddress(), (double) msec, (old, sample) -> old + ALPHA * (sample - old));
+    }
+
+    public void recordFailure(Peer peer) {
+        recordLatency(peer, PENALTY_MSEC);
+    }
+
+    /** Returns the estimated latency of the peer in milliseconds, or zero if we know nothing about it. */
+    public synchronized long getLatency(Peer peer) {
+        return Math.round(latencies.getOrDefault(peer.getAddress(), 0.0));
+    }
+
+    /** Returns a copy of the list ordered fastest first. */
+    public List<Peer> sortByLatency(List<Peer> peers) {
+        List<Peer> result = new ArrayList<>(peers);
+        result.sort(Comparator.comparingLong(this::getLatency));
+        return result;
+    }
+}
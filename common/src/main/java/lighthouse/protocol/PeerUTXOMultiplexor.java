@@ -1,8 +1,11 @@
 package lighthouse.protocol;
 
+import org.bitcoinj.core.AbstractPeerEventListener;
+import org.bitcoinj.core.Message;
 import org.bitcoinj.core.Peer;
 import org.bitcoinj.core.TransactionOutPoint;
 import org.bitcoinj.core.UTXOsMessage;
+import org.bitcoinj.utils.Threading;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -11,62 +14,145 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
- * A UTXOSource that repeats the given query on all provided peers, waits for the response from all of them
- * to come in, and then verifies that they all match. If there's any inconsistency at all, or if any query fails,
- * the future completes exceptionally.
+ * A UTXOSource that repeats the given query on several peers and verifies that the answers match. By default every
+ * peer is asked and all of them must answer. In quorum mode only the quickest peers are asked, and the query completes
+ * as soon as enough of them agreed, so one slow peer can't hold things up. Either way, if any two answers differ the
+ * future completes exceptionally, as does failure of so many queries that agreement is no longer possible.
  */
 public class PeerUTXOMultiplexor {
     private static final Logger log = LoggerFactory.getLogger(PeerUTXOMultiplexor.class);
-    private List<Peer> peers;
+    // How many peers beyond the quorum to ask, so one failure or straggler doesn't stall the query.
+    private static final int SPARE_PEERS = 1;
+
+    private final List<Peer> peers;
+    private final int quorum;
+    @Nullable private final PeerLatencyTracker latencies;
 
     public PeerUTXOMultiplexor(List<Peer> peers) {
+        this(peers, peers.size(), null);
+    }
+
+    /**
+     * Creates a multiplexor that completes once quorum peers gave the same answer. If a tracker is provided, the
+     * quickest peers are preferred and their response times are recorded.
+     */
+    public PeerUTXOMultiplexor(List<Peer> peers, int quorum, @Nullable PeerLatencyTracker latencies) {
         checkArgument(!peers.isEmpty());
-        this.peers = peers;
+        checkArgument(quorum > 0 && quorum <= peers.size());
+        this.latencies = latencies;
+        this.quorum = quorum;
+        if (latencies != null && quorum < peers.size()) {
+            List<Peer> sorted = latencies.sortByLatency(peers);
+            this.peers = sorted.subList(0, Math.min(sorted.size(), quorum + SPARE_PEERS));
+        } else {
+            this.peers = peers;
+        }
     }
 
     public CompletableFuture<UTXOsMessage> query(List<TransactionOutPoint> outPoints) {
         CompletableFuture<UTXOsMessage> result = new CompletableFuture<>();
         try {
-            List<ListenableFuture<UTXOsMessage>> futures = new LinkedList<>();
-            for (Peer peer: peers) {
+            final long startTime = System.nanoTime();
+            final List<UTXOsMessage> answers = new ArrayList<>(peers.size());
+            final int[] failures = {0};
+            final List<ListenableFuture<UTXOsMessage>> futures = new ArrayList<>(peers.size());
+            for (Peer peer : peers) {
                 log.info("Sending UTXO query to {}", peer);
-                futures.add(peer.getUTXOs(outPoints));
-            }
-            Futures.addCallback(Futures.allAsList(futures), new FutureCallback<List<UTXOsMessage>>() {
-                @Override
-                public void onSuccess(@Nullable List<UTXOsMessage> val) {
-                    checkNotNull(val);
-                    log.info("Got {} UTXO responses", val.size());
-                    // Verify they are all the same.
-                    UTXOsMessage template = val.get(0);
-                    log.info("Template is: {}", template);
-                    for (UTXOsMessage response : val) {
-                        log.info("response is: {}", response);
-                        if (!response.equals(template)) {
-                            log.error("Got inconsistent UTXO answers from peer: {}", response);
-                            result.completeExceptionally(new Ex.InconsistentUTXOAnswers());
-                            return;
+                ListenableFuture<UTXOsMessage> future;
+                try {
+                    future = getUTXOs(peer, outPoints);
+                } catch (RuntimeException e) {
+                    // E.g. the peer is still busy with an earlier query that we stopped waiting for once the quorum
+                    // was reached. Count it as a failure of this peer only.
+                    future = Futures.immediateFailedFuture(e);
+                }
+                synchronized (answers) {
+                    futures.add(future);
+                }
+                Futures.addCallback(future, new FutureCallback<UTXOsMessage>() {
+                    @Override
+                    public void onSuccess(@Nullable UTXOsMessage response) {
+                        long msec = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+                        log.info("Response from {} after {} msec is: {}", peer, msec, response);
+                        synchronized (answers) {
+                            if (!answers.isEmpty() && !answers.get(0).equals(response)) {
+                                log.error("Got inconsistent UTXO answers from peer: {}", response);
+                                if (latencies != null)
+                                    latencies.recordFailure(peer);
+                                result.completeExceptionally(new Ex.InconsistentUTXOAnswers());
+                                return;
+                            }
+                            if (latencies != null)
+                                latencies.recordLatency(peer, msec);
+                            answers.add(response);
+                            if (answers.size() == quorum) {
+                                log.info("Got {} matching UTXO responses", quorum);
+                                result.complete(response);
+                                chargeStragglers(futures, msec);
+                            }
                         }
                     }
-                    result.complete(template);
-                }
 
-                @Override
-                public void onFailure(@Nonnull Throwable throwable) {
-                    result.completeExceptionally(throwable);
-                }
-            });
+                    @Override
+                    public void onFailure(@Nonnull Throwable throwable) {
+                        log.warn("UTXO query to {} failed: {}", peer, throwable.toString());
+                        if (latencies != null)
+                            latencies.recordFailure(peer);
+                        synchronized (answers) {
+                            // Give up once there aren't enough peers left to reach the quorum.
+                            if (peers.size() - ++failures[0] < quorum)
+                                result.completeExceptionally(throwable);
+                        }
+                    }
+                });
+            }
         } catch (Exception e) {
             result.completeExceptionally(e);
         }
         return result;
     }
+
+    // Peer.getUTXOs reads its future back out of a field after sending the query, and the network thread clears that
+    // field once the answer is in. A quick peer can answer before the read, and then we'd get null. So catch the
+    // answer on the network thread too, and use that when it happens.
+    private static ListenableFuture<UTXOsMessage> getUTXOs(Peer peer, List<TransactionOutPoint> outPoints) {
+        AtomicReference<UTXOsMessage> answer = new AtomicReference<>();
+        AbstractPeerEventListener listener = new AbstractPeerEventListener() {
+            @Override
+            public Message onPreMessageReceived(Peer p, Message m) {
+                if (m instanceof UTXOsMessage)
+                    answer.set((UTXOsMessage) m);
+                return m;
+            }
+        };
+        // Only same thread listeners see messages before the peer handles them.
+        peer.addEventListener(listener, Threading.SAME_THREAD);
+        try {
+            ListenableFuture<UTXOsMessage> future = peer.getUTXOs(outPoints);
+            return future != null ? future : Futures.immediateFuture(checkNotNull(answer.get()));
+        } finally {
+            peer.removeEventListener(listener);
+        }
+    }
+
+    // Peers that haven't answered by the time the quorum was reached are at least this slow. If they never answer
+    // at all this stops them from looking like unknown peers and being asked first next time.
+    private void chargeStragglers(List<ListenableFuture<UTXOsMessage>> futures, long msec) {
+        if (latencies == null)
+            return;
+        for (int i = 0; i < futures.size(); i++) {
+            if (!futures.get(i).isDone())
+                latencies.recordLatency(peers.get(i), msec);
+        }
+    }
 }
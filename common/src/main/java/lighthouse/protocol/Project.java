@@ -1,5 +1,8 @@
 package lighthouse.protocol;
 
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.protobuf.ByteString;
@@ -24,10 +27,15 @@ import java.net.*;
 import java.security.SecureRandom;
 import java.security.SignatureException;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
@@ -45,6 +53,9 @@ public class Project {
     private final Logger log = LoggerFactory.getLogger(Project.class);
     private final NetworkParameters params;
     private final LHProtos.ProjectDetails projectReq;
+    // If set, the cover image was removed from projectReq to save memory, and this reads the project again from
+    // wherever it came from when the image is needed.
+    @Nullable private final Callable<LHProtos.Project> reloader;
     // These fields should be immutable pure functions of projectReq, as we may hand back projectReq later and
     // expect that it's not been changed.
     private final ImmutableList<TransactionOutput> outputs;
@@ -52,11 +63,33 @@ public class Project {
     private final String title;
     @Nullable private final URI  url;
     // Projects are identified by the hash of their serialized contents. There is no canonical encoding
-    // and this ID is mostly used just as a key in various maps.
+    // and this ID is mostly used just as a key in various maps. It's also what equals/hashCode use, as comparing or
+    // hashing the protobuf would mean going over the cover image every time.
     private final Sha256Hash hash;
+    private final String id;
 
     private final byte[] authKey;
     private final int authKeyIndex;
+    // Decoded form of authKey, created on first use as not every project has one.
+    private volatile ECKey authECKey;
+
+    // The same pledges get sanity checked over and over (when verifying them, looking for duplicated outpoints,
+    // matching them against claims ...) so we keep the parsed transactions of those that passed. Keyed by the
+    // serialized transaction because the same pledge may turn up in many different protobuf objects.
+    private static final int MAX_CHECKED_PLEDGES = 20000;
+    private final Cache<ByteString, Transaction> checkedPledgeTxns =
+            CacheBuilder.newBuilder().maximumSize(MAX_CHECKED_PLEDGES).build();
+
+    // Pledges are rechecked after every block, but only the UTXO lookup can give a different answer: the scripts of a
+    // given input always either pass or fail against a given scriptPubKey. So we remember the inputs that passed,
+    // keyed by a hash of the pledge tx hash, the input index and the scriptPubKey the peers gave us. Shared between
+    // all projects, as they get reloaded from disk.
+    private static final int MAX_VERIFIED_INPUTS = 100000;
+    private static final Cache<Sha256Hash, Boolean> verifiedInputs =
+            CacheBuilder.newBuilder().maximumSize(MAX_VERIFIED_INPUTS).build();
+
+    // Seeding a SecureRandom can block waiting for entropy, so each verification thread keeps one around.
+    private static final ThreadLocal<SecureRandom> random = ThreadLocal.withInitial(SecureRandom::new);
 
     public Project(LHProtos.ProjectDetails details) throws PaymentProtocolException, InvalidProtocolBufferException {
         this(wrapDetails(details).build());
@@ -69,14 +102,32 @@ public class Project {
     }
 
     public Project(LHProtos.Project proto) throws PaymentProtocolException, InvalidProtocolBufferException {
+        this(proto, null);
+    }
+
+    /**
+     * Creates a project that doesn't keep its cover image in memory. Instead the given reloader is used to read the
+     * project again (e.g. from disk) whenever the image or the full protobuf is needed. Images can be large and the
+     * server never looks at them, so this is worth it when many projects are loaded.
+     */
+    public Project(LHProtos.Project proto, @Nullable Callable<LHProtos.Project> reloader) throws PaymentProtocolException, InvalidProtocolBufferException {
         hash = Sha256Hash.create(proto.toByteArray());
+        id = hash.toString();
         // "Cast" it to a regular BIP70 payment request, possibly losing data along the way, but that's OK
         // because we only want to do this to reuse the existing APIs.
         Protos.PaymentRequest paymentRequest = Protos.PaymentRequest.parseFrom(proto.toByteString());
         PaymentSession session = new PaymentSession(paymentRequest, false);
         this.outputs = ImmutableList.copyOf(session.getSendRequest().tx.getOutputs());
         this.params = session.getNetworkParameters();
-        this.projectReq = LHProtos.ProjectDetails.parseFrom(proto.getSerializedPaymentDetails());
+        LHProtos.ProjectDetails details = LHProtos.ProjectDetails.parseFrom(proto.getSerializedPaymentDetails());
+        if (reloader != null && details.getExtraDetails().hasCoverImage()) {
+            LHProtos.ProjectExtraDetails.Builder extra = details.getExtraDetails().toBuilder().clearCoverImage();
+            details = details.toBuilder().setExtraDetails(extra).build();
+            this.reloader = reloader;
+        } else {
+            this.reloader = null;
+        }
+        this.projectReq = details;
         this.goalAmount = this.projectReq.getOutputsList().stream().mapToLong(LHProtos.Output::getAmount).sum();
         this.minPledgeAmount = this.projectReq.getExtraDetails().getMinPledgeSize();
         if (this.goalAmount <= 0)
@@ -122,18 +173,42 @@ public class Project {
         return details;
     }
 
-    /** Just returns a project that wraps the serialized details from this model. */
+    /**
+     * Just returns a project that wraps the serialized details from this model.
+     *
+     * @throws Ex.ProjectReloadFailed if the cover image was dropped and the project can't be read back as it was.
+     */
     public LHProtos.Project getProto() {
         LHProtos.Project.Builder proto = LHProtos.Project.newBuilder();
-        proto.setSerializedPaymentDetails(projectReq.toByteString());
+        proto.setSerializedPaymentDetails(getFullDetails().toByteString());
         return proto.build();
     }
 
+    // Returns projectReq including the cover image, reloading it if we dropped it. Never returns details without the
+    // image, as they would serialize to a project with a different ID.
+    private LHProtos.ProjectDetails getFullDetails() {
+        if (reloader == null)
+            return projectReq;
+        LHProtos.Project proto;
+        try {
+            proto = reloader.call();
+        } catch (Exception e) {
+            throw new Ex.ProjectReloadFailed(id, e);
+        }
+        if (!Sha256Hash.create(proto.toByteArray()).equals(hash))
+            throw new Ex.ProjectReloadFailed(id, null);
+        try {
+            return LHProtos.ProjectDetails.parseFrom(proto.getSerializedPaymentDetails());
+        } catch (InvalidProtocolBufferException e) {
+            throw new Ex.ProjectReloadFailed(id, e);   // Can't happen, it parsed when it was loaded.
+        }
+    }
+
     /**
      * Returns a string that is used to uniquely identify a project: a 256-bit hash of the project contents.
      */
     public String getID() {
-        return hash.toString();
+        return id;
     }
 
     /** Returns a human-readable title for the project. */
@@ -151,9 +226,13 @@ public class Project {
         return Coin.valueOf(goalAmount);
     }
 
-    /** Returns a byte array containing a JPEG or PNG to use for the cover image. */
+    /**
+     * Returns a byte array containing a JPEG or PNG to use for the cover image.
+     *
+     * @throws Ex.ProjectReloadFailed if the image was dropped and the project can't be read back as it was.
+     */
     public ByteString getCoverImage() {
-        return projectReq.getExtraDetails().getCoverImage();
+        return getFullDetails().getExtraDetails().getCoverImage();
     }
 
     /** Returns a deep copy of the list of outputs. */
@@ -190,18 +269,35 @@ public class Project {
      * representing the error.
      */
     public CompletableFuture<LHProtos.Pledge> verifyPledge(UTXOSource peer, LHProtos.Pledge pledge) {
+        return verifyPledge(peer, pledge, null);
+    }
+
+    /**
+     * Like {@link #verifyPledge(UTXOSource, LHProtos.Pledge)}, but if a pool is given the scripts are run on it rather
+     * than on the thread that provided the UTXOs, with the inputs checked in parallel. When many pledges are checked
+     * at once this spreads the signature checking over all the threads of the pool.
+     */
+    public CompletableFuture<LHProtos.Pledge> verifyPledge(UTXOSource peer, LHProtos.Pledge pledge,
+                                                          @Nullable ForkJoinPool pool) {
         try {
             log.info("Checking pledge for project '{}' [{}]", getTitle(), getID());
             Transaction tx = fastSanityCheck(pledge);
-            return lookupUTXOs(peer, tx).thenApply((result) -> {
-                if (result.size() != tx.getInputs().size()) {
+            CompletableFuture<List<TransactionOutput>> utxos = lookupUTXOs(peer, tx);
+            Function<List<TransactionOutput>, LHProtos.Pledge> check = (result) -> {
+                if (result.size() != tx.getInputs().size() || result.contains(null)) {
                     log.error("Could not locate all pledge UTXOs: may be double spent. Found:\n{}\n ... " +
                             " and pledge tx is...\n{}", result.toString(), tx);
-                    throw new Ex.UnknownUTXO();
+                    List<TransactionOutPoint> missing = new ArrayList<>();
+                    if (result.size() == tx.getInputs().size()) {
+                        for (int i = 0; i < result.size(); i++)
+                            if (result.get(i) == null)
+                                missing.add(tx.getInput(i).getOutpoint());
+                    }
+                    throw new Ex.UnknownUTXO(missing);
                 }
                 // The pledge matches some unspent outputs: now verify the scripts can spend and are signed with
                 // SIGHASH_ANYONECANPAY as appropriate.
-                verifyScripts(tx, result);
+                verifyScripts(tx, result, pool);
                 // Check that the pledge.total_input_value field is consistent/correct, and is not under the min
                 // pledge size for this project.
                 verifyValues(pledge, result);
@@ -209,7 +305,8 @@ public class Project {
                 // So we think it's a success!
                 log.info("Pledge appears to be OK");
                 return pledge;
-            });
+            };
+            return pool == null ? utxos.thenApply(check) : utxos.thenApplyAsync(check, pool);
         } catch (Exception e) {
             CompletableFuture<LHProtos.Pledge> future = new CompletableFuture<>();
             future.completeExceptionally(e);
@@ -227,7 +324,7 @@ public class Project {
             throw new Ex.PledgeTooSmall(minPledgeAmount - totalValue);
     }
 
-    private void verifyScripts(Transaction tx, List<TransactionOutput> result) throws VerificationException {
+    private void verifyScripts(Transaction tx, List<TransactionOutput> result, @Nullable ForkJoinPool pool) throws VerificationException {
         // We assume that the ordering of the result list matches the tx input order.
         //
         // Add a random input that cannot be predicted by the pledgor, and run the script. If all the
@@ -235,33 +332,73 @@ public class Project {
         // random input should be ignored and verification should pass.
         //
         checkState(tx.getInputs().size() == result.size());
-        tx = addRandomInput(tx);
-        for (int i = 0; i < tx.getInputs().size() - 1; i++) {
-            // Also check that the script we're about to run is of an expected form and contains a CHECKSIG. A remote
-            // peer could have provided us with an OP_TRUE script or equivalent that would always pass here, even if
-            // that's not the real script the tx was signed with. Forcing it to contain a CHECKSIG ensures that the
-            // signature in the input is verified and that can't pass unless the scriptPubKey is as expected.
-            // We also allow P2SH here because the input script must contain the correct output script in this case,
-            // thus the provided output must match.
-            final Script scriptPubKey = result.get(i).getScriptPubKey();
-            if (isSafeToCrossCheck(scriptPubKey)) {
-                TransactionInput input = tx.getInput(i);
-                // Try to stop some idiot/troll from giving us a non-standard input, thus making us think we've raised
-                // our funds but actually cannot easily claim the money.
-                DefaultRiskAnalysis.RuleViolation violation = isInputStandard(input, scriptPubKey);
-                if (violation != DefaultRiskAnalysis.RuleViolation.NONE) {
-                    log.error("TX input {} is non-standard due to rule {}", violation);
-                    throw new Ex.NonStandardInput();
-                }
-                try {
-                    input.verify(result.get(i));
-                } catch (VerificationException e) {
-                    log.error("TX input {} failed with scriptSig {}    scriptPubKey {}", i, input.getScriptSig(), result.get(0).getScriptPubKey());
-                    throw e;
-                }
-            } else
-                throw new VerificationException("Unexpected script form returned by peer: " + scriptPubKey);
+        final Sha256Hash txHash = tx.getHash();
+        final List<Integer> unverified = new ArrayList<>();
+        for (int i = 0; i < result.size(); i++)
+            if (verifiedInputs.getIfPresent(verifiedInputKey(txHash, i, result.get(i))) == null)
+                unverified.add(i);
+        if (unverified.isEmpty())
+            return;
+        final Transaction randomized = addRandomInput(tx);
+        final int workers = pool == null ? 1 : Math.min(pool.getParallelism(), unverified.size());
+        if (workers == 1) {
+            for (int i : unverified)
+                verifyInput(randomized, txHash, result, i);
+            return;
+        }
+        // Signature hashing temporarily modifies the other inputs of the transaction, so each task needs its own copy.
+        // The inputs are dealt out to one task per worker so the copy is only parsed once per worker.
+        final byte[] bits = randomized.bitcoinSerialize();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(workers);
+        for (int w = 0; w < workers; w++) {
+            final List<Integer> inputs = new ArrayList<>();
+            for (int j = w; j < unverified.size(); j += workers)
+                inputs.add(unverified.get(j));
+            tasks.add(ForkJoinTask.adapt(() -> {
+                Transaction copy = new Transaction(params, bits);
+                for (int i : inputs)
+                    verifyInput(copy, txHash, result, i);
+            }));
         }
+        // Runs the tasks in the pool we're being run on, and rethrows the first failure.
+        ForkJoinTask.invokeAll(tasks);
+    }
+
+    private static Sha256Hash verifiedInputKey(Sha256Hash txHash, int index, TransactionOutput output) {
+        byte[] script = output.getScriptBytes();
+        byte[] bits = new byte[32 + 4 + script.length];
+        System.arraycopy(txHash.getBytes(), 0, bits, 0, 32);
+        Utils.uint32ToByteArrayLE(index, bits, 32);
+        System.arraycopy(script, 0, bits, 36, script.length);
+        return Sha256Hash.create(bits);
+    }
+
+    private void verifyInput(Transaction tx, Sha256Hash txHash, List<TransactionOutput> result, int i) throws VerificationException {
+        // Also check that the script we're about to run is of an expected form and contains a CHECKSIG. A remote
+        // peer could have provided us with an OP_TRUE script or equivalent that would always pass here, even if
+        // that's not the real script the tx was signed with. Forcing it to contain a CHECKSIG ensures that the
+        // signature in the input is verified and that can't pass unless the scriptPubKey is as expected.
+        // We also allow P2SH here because the input script must contain the correct output script in this case,
+        // thus the provided output must match.
+        final Script scriptPubKey = result.get(i).getScriptPubKey();
+        if (isSafeToCrossCheck(scriptPubKey)) {
+            TransactionInput input = tx.getInput(i);
+            // Try to stop some idiot/troll from giving us a non-standard input, thus making us think we've raised
+            // our funds but actually cannot easily claim the money.
+            DefaultRiskAnalysis.RuleViolation violation = isInputStandard(input, scriptPubKey);
+            if (violation != DefaultRiskAnalysis.RuleViolation.NONE) {
+                log.error("TX input {} is non-standard due to rule {}", violation);
+                throw new Ex.NonStandardInput();
+            }
+            try {
+                input.verify(result.get(i));
+            } catch (VerificationException e) {
+                log.error("TX input {} failed with scriptSig {}    scriptPubKey {}", i, input.getScriptSig(), result.get(0).getScriptPubKey());
+                throw e;
+            }
+            verifiedInputs.put(verifiedInputKey(txHash, i, result.get(i)), true);
+        } else
+            throw new VerificationException("Unexpected script form returned by peer: " + scriptPubKey);
     }
 
     // TODO: Move this into bitcoinj post-0.12
@@ -319,11 +456,28 @@ public class Project {
     }
 
     private Transaction addRandomInput(Transaction tx) {
-        tx = new Transaction(params, tx.bitcoinSerialize());
+        Transaction copy;
+        if (tx.getVersion() == 1) {
+            // Copy the parts by hand rather than via a serialize/parse round trip, which is several times slower.
+            copy = new Transaction(params);
+            for (TransactionInput input : tx.getInputs()) {
+                TransactionOutPoint outPoint = new TransactionOutPoint(params, input.getOutpoint().getIndex(),
+                        input.getOutpoint().getHash());
+                TransactionInput newInput = new TransactionInput(params, copy, input.getScriptBytes(), outPoint);
+                newInput.setSequenceNumber(input.getSequenceNumber());
+                copy.addInput(newInput);
+            }
+            for (TransactionOutput output : tx.getOutputs())
+                copy.addOutput(new TransactionOutput(params, copy, output.getValue(), output.getScriptBytes()));
+            copy.setLockTime(tx.getLockTime());
+        } else {
+            // There's no way to set the version of a new transaction, and it's covered by the signatures.
+            copy = new Transaction(params, tx.bitcoinSerialize());
+        }
         byte[] rand = new byte[32];
-        new SecureRandom().nextBytes(rand);
-        tx.addInput(new TransactionInput(params, tx, new ScriptBuilder().data(rand).build().getProgram()));
-        return tx;
+        random.get().nextBytes(rand);
+        copy.addInput(new TransactionInput(params, copy, new ScriptBuilder().data(rand).build().getProgram()));
+        return copy;
     }
 
     private CompletableFuture<List<TransactionOutput>> lookupUTXOs(UTXOSource peer, Transaction tx) {
@@ -332,12 +486,19 @@ public class Project {
         return peer.getUTXOs(outPoints);
     }
 
-    /** Check that the pledge protobuf passes basic validity checks. */
+    /**
+     * Check that the pledge protobuf passes basic validity checks. The returned transaction may be shared with other
+     * callers, so it must not be modified.
+     */
     public Transaction fastSanityCheck(LHProtos.Pledge pledge) {
         if (pledge.getTransactionsList().isEmpty())
             throw new Ex.NoTransactionData();
         // We take the last the transaction because the others are dependencies.
-        Transaction tx = new Transaction(params, pledge.getTransactions(pledge.getTransactionsCount() - 1).toByteArray());
+        ByteString bits = pledge.getTransactions(pledge.getTransactionsCount() - 1);
+        Transaction tx = checkedPledgeTxns.getIfPresent(bits);
+        if (tx != null)
+            return tx;
+        tx = new Transaction(params, bits.toByteArray());
         if (tx.getOutputs().size() != outputs.size())
             throw new Ex.TxWrongNumberOfOutputs(tx.getOutputs().size(), outputs.size());
         // Output scripts must match project output scripts. We assume the project creator doesn't specify an invalid
@@ -347,6 +508,7 @@ public class Project {
                 throw new Ex.OutputMismatch();
         }
         tx.verify();
+        checkedPledgeTxns.put(bits, tx);
         return tx;
     }
 
@@ -362,7 +524,8 @@ public class Project {
         if (allPledgesValue != goalAmount)
             throw new Ex.ValueMismatch(allPledgesValue - goalAmount);
         pledges.stream().map(this::fastSanityCheck).forEach(pledge -> {
-            pledge.getInputs().forEach(contract::addInput);
+            // Copy the inputs, as adding them to the contract would otherwise change the shared pledge tx.
+            pledge.getInputs().forEach(input -> contract.addInput(input.duplicateDetached()));
         });
         contract.setPurpose(Transaction.Purpose.ASSURANCE_CONTRACT_CLAIM);
         contract.verify();
@@ -371,27 +534,78 @@ public class Project {
 
     /** Returns a future for the project status that completes when successfully downloaded via HTTP. */
     public CompletableFuture<LHProtos.ProjectStatus> getStatus(PledgingWallet wallet, @Nullable KeyParameter key) {
+        CompletableFuture<StatusUpdate> update = getStatusUpdate(wallet, key, null);
+        return update == null ? null : update.thenApply(u -> u.status);
+    }
+
+    /** The result of polling the server for changes since a previous status. */
+    public static class StatusUpdate {
+        /** The status, or null if the server said nothing changed since the ETag that was passed in. */
+        @Nullable public final LHProtos.ProjectStatus status;
+        /**
+         * If true the status only contains pledges added since the ETag that was passed in, and pledges with the
+         * hashes in {@link #removed} should be dropped.
+         */
+        public final boolean isDelta;
+        public final List<Sha256Hash> removed;
+        /** Tag to pass next time, or null if the server doesn't support them. */
+        @Nullable public final String etag;
+
+        public StatusUpdate(@Nullable LHProtos.ProjectStatus status, boolean isDelta, List<Sha256Hash> removed,
+                            @Nullable String etag) {
+            this.status = status;
+            this.isDelta = isDelta;
+            this.removed = removed;
+            this.etag = etag;
+        }
+    }
+
+    /**
+     * Like {@link #getStatus(PledgingWallet, KeyParameter)}, but if an ETag from a previous update is given then the
+     * server may reply that nothing changed, or send only the pledge changes since then.
+     */
+    public CompletableFuture<StatusUpdate> getStatusUpdate(PledgingWallet wallet, @Nullable KeyParameter key,
+                                                           @Nullable String etag) {
+        return getStatusUpdate(wallet, key, etag, ServerConnections.SHARED);
+    }
+
+    /** Like {@link #getStatusUpdate(PledgingWallet, KeyParameter, String)} but sends the query via the given connections. */
+    public CompletableFuture<StatusUpdate> getStatusUpdate(PledgingWallet wallet, @Nullable KeyParameter key,
+                                                           @Nullable String etag, ServerConnections connections) {
         final URI paymentURL = getPaymentURL();
         if (paymentURL == null)
             return null;
-        CompletableFuture<LHProtos.ProjectStatus> future = new CompletableFuture<>();
-        Thread thread = new Thread(() -> {
-            try {
-                URLConnection connection = getServerQueryURL(wallet, key).openConnection();
+        CompletableFuture<StatusUpdate> future;
+        try {
+            future = connections.execute(getServerQueryURL(wallet, key), connection -> {
                 connection.setDoOutput(true);
-                connection.setConnectTimeout(10 * 1000);
-                connection.addRequestProperty("User-Agent", "Lighthouse/1.0");
+                if (etag != null) {
+                    connection.addRequestProperty("If-None-Match", etag);
+                    connection.addRequestProperty("A-IM", LHUtils.HTTP_DELTA_IM);
+                }
                 connection.connect();
+                final String newTag = connection.getHeaderField("ETag");
+                if (connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED)
+                    return new StatusUpdate(null, false, ImmutableList.of(), newTag != null ? newTag : etag);
                 byte[] bits = Streams.readAllLimited(connection.getInputStream(), 1024 * 1024);  // 1mb limit.
                 LHProtos.ProjectStatus status = LHProtos.ProjectStatus.parseFrom(bits);
-                future.complete(status);
-            } catch (Exception e) {
-                log.error("Failed download from server " + paymentURL, e);
-                future.completeExceptionally(e);
-            }
-        }, "Project downloader");
-        thread.setDaemon(true);
-        thread.start();
+                boolean isDelta = connection.getResponseCode() == LHUtils.HTTP_IM_USED;
+                List<Sha256Hash> removed = Lists.newArrayList();
+                String removedHeader = connection.getHeaderField(LHUtils.HTTP_REMOVED_PLEDGES_HEADER);
+                if (isDelta && removedHeader != null) {
+                    for (String hash : Splitter.on(',').omitEmptyStrings().trimResults().split(removedHeader))
+                        removed.add(new Sha256Hash(hash));
+                }
+                return new StatusUpdate(status, isDelta, removed, newTag);
+            });
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        future.whenComplete((update, ex) -> {
+            if (ex != null)
+                log.error("Failed download from server " + paymentURL, ex);
+        });
         return future;
     }
 
@@ -427,14 +641,14 @@ public class Project {
 
         Project project = (Project) o;
 
-        if (!projectReq.equals(project.projectReq)) return false;
+        if (!hash.equals(project.hash)) return false;
 
         return true;
     }
 
     @Override
     public int hashCode() {
-        return projectReq.hashCode();
+        return hash.hashCode();
     }
 
     public String getSuggestedFileName() {
@@ -454,7 +668,10 @@ public class Project {
     }
 
     public void authenticateOwner(String message, String signatureBase64) throws SignatureException {
-        ECKey.fromPublicOnly(authKey).verifyMessage(message, signatureBase64);
+        ECKey key = authECKey;
+        if (key == null)
+            authECKey = key = ECKey.fromPublicOnly(authKey);
+        key.verifyMessage(message, signatureBase64);
     }
 
     public byte[] getAuthKey() {
@@ -0,0 +1,139 @@
+package lighthouse.protocol;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Runs HTTP requests to project servers on a small shared pool of threads, rather than a new thread per request. At
+ * most a few requests go to the same host at once and the rest queue up behind them, so a burst of status refreshes
+ * after a new block doesn't open a connection per project. The JDK keeps connections alive and pools them per host,
+ * but only once the response was read to the end and closed, which this class takes care of after each request.
+ */
+public class ServerConnections {
+    public static final int DEFAULT_THREADS = 8;
+    public static final int DEFAULT_MAX_PER_HOST = 2;
+    public static final int DEFAULT_CONNECT_TIMEOUT_MSEC = 10 * 1000;
+    public static final int DEFAULT_READ_TIMEOUT_MSEC = 30 * 1000;
+
+    /** Used by everything that doesn't ask for something else. */
+    public static final ServerConnections SHARED = new ServerConnections(DEFAULT_THREADS, DEFAULT_MAX_PER_HOST,
+            DEFAULT_CONNECT_TIMEOUT_MSEC, DEFAULT_READ_TIMEOUT_MSEC);
+
+    public interface Handler<T> {
+        /**
+         * Called on a pool thread with a connection that has timeouts and the user agent set, but isn't connected yet.
+         * The handler may add headers, then reads what it needs from the response.
+         */
+        T handle(HttpURLConnection connection) throws Exception;
+    }
+
+    private final ExecutorService threads;
+    private final int maxPerHost, connectTimeoutMsec, readTimeoutMsec;
+
+    // Guarded by this. Requests in flight and requests waiting for a free slot, per host and port.
+    private final Map<String, Integer> active = new HashMap<>();
+    private final Map<String, Deque<Runnable>> waiting = new HashMap<>();
+
+    public ServerConnections(int threads, int maxPerHost, int connectTimeoutMsec, int readTimeoutMsec) {
+        checkArgument(threads > 0);
+        checkArgument(maxPerHost > 0);
+        this.threads = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("Server connection %d").build());
+        this.maxPerHost = maxPerHost;
+        this.connectTimeoutMsec = connectTimeoutMsec;
+        this.readTimeoutMsec = readTimeoutMsec;
+    }
+
+    /** Queues up a request to the given URL. The future fails with whatever the handler or the connection threw. */
+    public <T> CompletableFuture<T> execute(URL url, Handler<T> handler) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        final String host = url.getHost() + ":" + url.getPort();
+        Runnable task = () -> {
+            try {
+                future.complete(run(url, handler));
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                finished(host);
+            }
+        };
+        boolean start;
+        synchronized (this) {
+            int count = active.getOrDefault(host, 0);
+            start = count < maxPerHost;
+            if (start)
+                active.put(host, count + 1);
+            else
+                waiting.computeIfAbsent(host, k -> new ArrayDeque<>()).add(task);
+        }
+        if (start)
+            threads.execute(task);
+        return future;
+    }
+
+    private void finished(String host) {
+        Runnable next;
+        synchronized (this) {
+            Deque<Runnable> queue = waiting.get(host);
+            next = queue == null ? null : queue.poll();
+            if (queue != null && queue.isEmpty())
+                waiting.remove(host);
+            // The slot passes straight on to the next waiting request, if there is one.
+            if (next == null) {
+                int count = active.get(host) - 1;
+                if (count == 0)
+                    active.remove(host);
+                else
+                    active.put(host, count);
+            }
+        }
+        if (next != null)
+            threads.execute(next);
+    }
+
+    private <T> T run(URL url, Handler<T> handler) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(connectTimeoutMsec);
+        connection.setReadTimeout(readTimeoutMsec);
+        connection.addRequestProperty("User-Agent", "Lighthouse/1.0");
+        T result;
+        try {
+            result = handler.handle(connection);
+        } catch (Exception e) {
+            // Who knows what state the connection is in, so don't let it be reused.
+            connection.disconnect();
+            throw e;
+        }
+        release(connection);
+        return result;
+    }
+
+    private static void release(HttpURLConnection connection) {
+        try {
+            InputStream stream = connection.getResponseCode() >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            if (stream != null) {
+                try {
+                    ByteStreams.copy(stream, ByteStreams.nullOutputStream());
+                } finally {
+                    stream.close();
+                }
+            }
+        } catch (IOException e) {
+            connection.disconnect();
+        }
+    }
+}
@@ -7,5 +7,9 @@ import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 public interface UTXOSource {
+    /**
+     * Looks up the given outpoints. The result has an entry for each of them in the same order, which is null if the
+     * outpoint isn't in the UTXO set.
+     */
     public CompletableFuture<List<TransactionOutput>> getUTXOs(List<TransactionOutPoint> outPoints);
 }
@@ -0,0 +1,165 @@
+package lighthouse.protocol;
+
+import net.jcip.annotations.GuardedBy;
+import org.bitcoinj.core.*;
+
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Remembers whether pledge inputs were found to be spent or unspent the last time we asked the P2P network, so they
+ * don't all have to be queried again on every block. Outpoints last seen unspent are inserted into the Bloom filters
+ * we send to peers, so when a transaction spending one of them shows up (e.g. a revocation or a claim) its entry can
+ * be dropped and only the pledges affected need to be looked up again. Thread safe.
+ */
+public class UTXOStatusCache implements PeerFilterProvider {
+    public static class Entry {
+        public final String projectID;
+        public final boolean unspent;
+        // Chain height at which the status was learned.
+        public final int height;
+
+        public Entry(String projectID, boolean unspent, int height) {
+            this.projectID = projectID;
+            this.unspent = unspent;
+            this.height = height;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s at height %d", unspent ? "unspent" : "spent", height);
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    @GuardedBy("lock") private final Map<TransactionOutPoint, Entry> entries = new HashMap<>();
+    @GuardedBy("lock") private int unspentCount;
+
+    /**
+     * Records the status of the given outpoints, which are the inputs of a pledge for the given project. Returns true
+     * if outpoints were added to the Bloom filter, meaning the caller should ask the peer group to recalculate it.
+     */
+    public boolean record(String projectID, Collection<TransactionOutPoint> outPoints, boolean unspent, int height) {
+        lock.lock();
+        try {
+            boolean filterGrew = false;
+            for (TransactionOutPoint outPoint : outPoints) {
+                Entry old = entries.put(outPoint, new Entry(projectID, unspent, height));
+                if (old != null && old.unspent)
+                    unspentCount--;
+                if (unspent) {
+                    unspentCount++;
+                    filterGrew |= old == null || !old.unspent;
+                }
+            }
+            return filterGrew;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns true if all the given outpoints have a status recorded. */
+    public boolean isKnown(Collection<TransactionOutPoint> outPoints) {
+        lock.lock();
+        try {
+            for (TransactionOutPoint outPoint : outPoints)
+                if (!entries.containsKey(outPoint))
+                    return false;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Returns true if the given transaction spends any outpoint last seen unspent. */
+    public boolean isSpentBy(Transaction tx) {
+        lock.lock();
+        try {
+            for (TransactionInput input : tx.getInputs()) {
+                Entry entry = entries.get(input.getOutpoint());
+                if (entry != null && entry.unspent)
+                    return true;
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forgets the status of any outpoints last seen unspent that the given transaction spends, and returns the IDs of
+     * the projects they belong to.
+     */
+    public Set<String> markSpentBy(Transaction tx) {
+        lock.lock();
+        try {
+            Set<String> projectIDs = new HashSet<>();
+            for (TransactionInput input : tx.getInputs()) {
+                Entry entry = entries.get(input.getOutpoint());
+                if (entry == null || !entry.unspent)
+                    continue;
+                entries.remove(input.getOutpoint());
+                unspentCount--;
+                projectIDs.add(entry.projectID);
+            }
+            return projectIDs;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void forget(Collection<TransactionOutPoint> outPoints) {
+        lock.lock();
+        try {
+            for (TransactionOutPoint outPoint : outPoints) {
+                Entry old = entries.remove(outPoint);
+                if (old != null && old.unspent)
+                    unspentCount--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getEarliestKeyCreationTime() {
+        // We don't need any historical blocks, only to hear about spends from now on.
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int getBloomFilterElementCount() {
+        lock.lock();
+        try {
+            return unspentCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public BloomFilter getBloomFilter(int size, double falsePositiveRate, long nTweak) {
+        lock.lock();
+        try {
+            BloomFilter filter = new BloomFilter(size, falsePositiveRate, nTweak);
+            for (Map.Entry<TransactionOutPoint, Entry> entry : entries.entrySet()) {
+                if (entry.getValue().unspent)
+                    filter.insert(entry.getKey().bitcoinSerialize());
+            }
+            return filter;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isRequiringUpdateAllBloomFilter() {
+        return false;
+    }
+
+    @Override
+    public Lock getLock() {
+        return lock;
+    }
+}
@@ -2,12 +2,10 @@ package lighthouse.threading;
 
 import javafx.beans.WeakListener;
 import javafx.collections.*;
+import net.jcip.annotations.GuardedBy;
 
 import java.lang.ref.WeakReference;
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 /**
  * Utility functions that mirror changes from one list into another list. JavaFX already provides this functionality
@@ -120,8 +118,13 @@ public class ObservableMirrors {
     }
 
     private static class MapMirror<K, V> implements MapChangeListener<K, V>, WeakListener {
+        private static final Object REMOVED = new Object();
+
         private final WeakReference<ObservableMap<K, V>> targetMap;
         private final AffinityExecutor runChangesIn;
+        // Changes that haven't been applied yet: the latest value for each key, or REMOVED. A burst of changes is
+        // applied by a single task, and a key that changes several times in the meantime is only touched once.
+        @GuardedBy("this") private Map<K, Object> pending = new LinkedHashMap<>();
 
         public MapMirror(ObservableMap<K, V> targetMap, AffinityExecutor runChangesIn) {
             this.targetMap = new WeakReference<>(targetMap);
@@ -139,13 +142,28 @@ public class ObservableMirrors {
             if (map == null) {
                 change.getMap().removeListener(this);
             } else {
-                runChangesIn.executeASAP(() -> {
-                    if (change.wasAdded()) {
-                        map.put(change.getKey(), change.getValueAdded());
-                    } else if (change.wasRemoved()) {
-                        map.remove(change.getKey());
-                    }
-                });
+                boolean schedule;
+                synchronized (this) {
+                    schedule = pending.isEmpty();
+                    pending.put(change.getKey(), change.wasAdded() ? change.getValueAdded() : REMOVED);
+                }
+                if (schedule)
+                    runChangesIn.executeASAP(() -> apply(map));
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void apply(ObservableMap<K, V> map) {
+            Map<K, Object> changes;
+            synchronized (this) {
+                changes = pending;
+                pending = new LinkedHashMap<>();
+            }
+            for (Map.Entry<K, Object> entry : changes.entrySet()) {
+                if (entry.getValue() == REMOVED)
+                    map.remove(entry.getKey());
+                else
+                    map.put(entry.getKey(), (V) entry.getValue());
             }
         }
     }
@@ -166,6 +184,9 @@ public class ObservableMirrors {
     private static class SetMirror<E> implements SetChangeListener<E>, WeakListener {
         private final WeakReference<ObservableSet<E>> targetSet;
         private final AffinityExecutor runChangesIn;
+        // Changes that haven't been applied yet: true if the element was last added, false if removed. A burst of
+        // changes is applied by a single task, and an element added then removed again is never seen at all.
+        @GuardedBy("this") private Map<E, Boolean> pending = new LinkedHashMap<>();
 
         public SetMirror(ObservableSet<E> set, AffinityExecutor runChangesIn) {
             this.targetSet = new WeakReference<>(set);
@@ -178,13 +199,31 @@ public class ObservableMirrors {
             if (set == null) {
                 change.getSet().removeListener(this);
             } else {
-                // If we're already in the right thread this will just run the change immediately, as per normal.
-                runChangesIn.executeASAP(() -> {
-                    if (change.wasAdded())
-                        set.add(change.getElementAdded());
+                boolean schedule;
+                synchronized (this) {
+                    schedule = pending.isEmpty();
                     if (change.wasRemoved())
-                        set.remove(change.getElementRemoved());
-                });
+                        pending.put(change.getElementRemoved(), false);
+                    if (change.wasAdded())
+                        pending.put(change.getElementAdded(), true);
+                }
+                // If we're already in the right thread this will just run the change immediately, as per normal.
+                if (schedule)
+                    runChangesIn.executeASAP(() -> apply(set));
+            }
+        }
+
+        private void apply(ObservableSet<E> set) {
+            Map<E, Boolean> changes;
+            synchronized (this) {
+                changes = pending;
+                pending = new LinkedHashMap<>();
+            }
+            for (Map.Entry<E, Boolean> entry : changes.entrySet()) {
+                if (entry.getValue())
+                    set.add(entry.getKey());
+                else
+                    set.remove(entry.getKey());
             }
         }
 
@@ -0,0 +1,69 @@
+package lighthouse.utils;
+
+import javafx.collections.MapChangeListener;
+import javafx.collections.ObservableMap;
+
+import javax.annotation.Nullable;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Listens to an observable map and passes each change on only to the subscribers for the key that changed, so a UI
+ * with one widget per key doesn't wake up every widget on every change. Subscribers are held weakly via an owner
+ * object (usually the widget), and are forgotten once the owner is garbage collected. The action must therefore not
+ * capture the owner itself: it's given the owner and the new value, or null if the key was removed.
+ *
+ * Should be used only from the thread that owns the map.
+ */
+public class KeyedMapDispatcher<K, V> {
+    private static class Subscriber<V> {
+        final WeakReference<Object> owner;
+        final BiConsumer<Object, V> action;
+
+        Subscriber(Object owner, BiConsumer<Object, V> action) {
+            this.owner = new WeakReference<>(owner);
+            this.action = action;
+        }
+    }
+
+    private final ObservableMap<K, V> map;
+    private final Map<K, List<Subscriber<V>>> subscribers = new HashMap<>();
+    private final MapChangeListener<K, V> listener = this::mapChanged;
+
+    public KeyedMapDispatcher(ObservableMap<K, V> map) {
+        this.map = map;
+        map.addListener(listener);
+    }
+
+    /** Runs the given action now with the current value, and again whenever the value for the key changes. */
+    @SuppressWarnings("unchecked")
+    public <O> void subscribe(K key, O owner, BiConsumer<O, V> action) {
+        List<Subscriber<V>> list = subscribers.get(key);
+        if (list == null) {
+            list = new ArrayList<>(1);
+            subscribers.put(key, list);
+        } else {
+            list.removeIf(s -> s.owner.get() == null);
+        }
+        list.add(new Subscriber<>(owner, (BiConsumer<Object, V>) action));
+        action.accept(owner, map.get(key));
+    }
+
+    private void mapChanged(MapChangeListener.Change<? extends K, ? extends V> change) {
+        List<Subscriber<V>> list = subscribers.get(change.getKey());
+        if (list == null)
+            return;
+        @Nullable V value = change.wasAdded() ? change.getValueAdded() : null;
+        for (Iterator<Subscriber<V>> it = list.iterator(); it.hasNext(); ) {
+            Subscriber<V> subscriber = it.next();
+            Object owner = subscriber.owner.get();
+            if (owner == null)
+                it.remove();
+            else
+                subscriber.action.accept(owner, value);
+        }
+        if (list.isEmpty())
+            subscribers.remove(change.getKey());
+    }
+}
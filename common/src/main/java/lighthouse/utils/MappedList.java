@@ -7,10 +7,10 @@ import javafx.collections.transformation.TransformationList;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Function;
-import java.util.stream.Collectors;
 
 /**
- * Maps elements of type F to E with change listeners working as expected.
+ * Maps elements of type F to E with change listeners working as expected. Each source change costs time proportional
+ * to the number of elements it touches (plus shifting the tail of the backing array), so large bulk adds are cheap.
  */
 public class MappedList<E, F> extends TransformationList<E, F> {
     private final Function<F, E> mapper;
@@ -24,59 +24,52 @@ public class MappedList<E, F> extends TransformationList<E, F> {
         super(source);
         this.mapper = mapper;
         this.mapped = new ArrayList<>(source.size());
-        mapAll();
+        mapped.addAll(mapRange(source));
     }
 
-    private void mapAll() {
-        mapped.clear();
-        for (F val : getSource())
-            mapped.add(mapper.apply(val));
+    private List<E> mapRange(List<? extends F> items) {
+        List<E> result = new ArrayList<>(items.size());
+        for (F item : items)
+            result.add(mapper.apply(item));
+        return result;
     }
 
     @Override
     protected void sourceChanged(ListChangeListener.Change<? extends F> c) {
-        // Is all this stuff right for every case? Probably it doesn't matter for this app.
         beginChange();
         while (c.next()) {
+            final int from = c.getFrom(), to = c.getTo();
             if (c.wasPermutated()) {
-                int[] perm = new int[c.getTo() - c.getFrom()];
-                for (int i = c.getFrom(); i < c.getTo(); i++)
-                    perm[i - c.getFrom()] = c.getPermutation(i);
-                nextPermutation(c.getFrom(), c.getTo(), perm);
+                // Element i has moved to getPermutation(i), so our copies have to follow it.
+                int[] perm = new int[to - from];
+                List<E> old = new ArrayList<>(mapped.subList(from, to));
+                for (int i = from; i < to; i++) {
+                    perm[i - from] = c.getPermutation(i);
+                    mapped.set(perm[i - from], old.get(i - from));
+                }
+                nextPermutation(from, to, perm);
             } else if (c.wasUpdated()) {
-                for (int i = c.getFrom(); i < c.getTo(); i++) {
-                    remapIndex(i);
+                for (int i = from; i < to; i++) {
+                    mapped.set(i, mapper.apply(getSource().get(i)));
                     nextUpdate(i);
                 }
             } else {
                 if (c.wasRemoved()) {
                     // Removed should come first to properly handle replacements, then add.
-                    List<E> removed = mapped.subList(c.getFrom(), c.getFrom() + c.getRemovedSize());
-                    ArrayList<E> duped = new ArrayList<>(removed);
-                    removed.clear();
-                    nextRemove(c.getFrom(), duped);
+                    List<E> range = mapped.subList(from, from + c.getRemovedSize());
+                    List<E> removed = new ArrayList<>(range);
+                    range.clear();
+                    nextRemove(from, removed);
                 }
                 if (c.wasAdded()) {
-                    for (int i = c.getFrom(); i < c.getTo(); i++) {
-                        mapped.addAll(c.getFrom(), c.getAddedSubList().stream().map(mapper).collect(Collectors.toList()));
-                        remapIndex(i);
-                    }
-                    nextAdd(c.getFrom(), c.getTo());
+                    mapped.addAll(from, mapRange(c.getAddedSubList()));
+                    nextAdd(from, to);
                 }
             }
         }
         endChange();
     }
 
-    private void remapIndex(int i) {
-        if (i >= mapped.size()) {
-            for (int j = mapped.size(); j <= i; j++) {
-                mapped.add(mapper.apply(getSource().get(j)));
-            }
-        }
-        mapped.set(i, mapper.apply(getSource().get(i)));
-    }
-
     @Override
     public int getSourceIndex(int index) {
         return index;
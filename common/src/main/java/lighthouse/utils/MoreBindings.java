@@ -5,7 +5,11 @@ import javafx.collections.ObservableList;
 import javafx.collections.ObservableSet;
 import javafx.collections.SetChangeListener;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.List;
 
 public class MoreBindings {
     public static <T> void bindSetToList(ObservableSet<T> set, ObservableList<T> list) {
@@ -18,6 +22,29 @@ public class MoreBindings {
         });
     }
 
+    /**
+     * Like {@link #bindSetToList(ObservableSet, ObservableList)} but keeps the list in the order given by the
+     * comparator, which must only return zero for equal elements. Each change is a binary search and a single insert
+     * or remove, so this is much cheaper than wrapping the list in a SortedList for big sets.
+     */
+    public static <T> void bindSetToSortedList(ObservableSet<T> set, ObservableList<T> list, Comparator<? super T> comparator) {
+        List<T> sorted = new ArrayList<>(set);
+        sorted.sort(comparator);
+        list.setAll(sorted);
+        set.addListener((SetChangeListener<T>) change -> {
+            if (change.wasAdded()) {
+                int index = Collections.binarySearch(list, change.getElementAdded(), comparator);
+                if (index < 0)
+                    list.add(-index - 1, change.getElementAdded());
+            } else if (change.wasRemoved()) {
+                int index = Collections.binarySearch(list, change.getElementRemoved(), comparator);
+                if (index >= 0)
+                    list.remove(index);
+            }
+        });
+    }
+
+    @SafeVarargs
     @SuppressWarnings("unchecked")
     public static <T> ObservableSet<T> mergeSets(ObservableSet<T>... sets) {
         return new ObservableSetWrapper<T>(new HashSet<>()) {
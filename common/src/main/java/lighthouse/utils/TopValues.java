@@ -0,0 +1,75 @@
+package lighthouse.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.ToLongFunction;
+
+/**
+ * Tracks the items with the largest values in a changing collection, and the total and count of the rest, so a chart
+ * can show a bounded number of slices plus an "others" bucket however many items there are. Adding or removing an
+ * item takes logarithmic time, and reading the top items takes time proportional to the limit.
+ *
+ * Items with equal values are ordered by the given tie breaker, which must only return zero for equal items. Values
+ * must not change whilst an item is tracked.
+ */
+public class TopValues<T> {
+    private final int limit;
+    private final ToLongFunction<T> valueOf;
+    private final TreeSet<T> ranked;   // Largest first.
+    private long total;
+
+    public TopValues(int limit, ToLongFunction<T> valueOf, Comparator<? super T> tieBreaker) {
+        this.limit = limit;
+        this.valueOf = valueOf;
+        this.ranked = new TreeSet<>(Comparator.comparingLong(valueOf).reversed().thenComparing(tieBreaker));
+    }
+
+    /** Returns true if the item wasn't already tracked. */
+    public boolean add(T item) {
+        if (!ranked.add(item))
+            return false;
+        total += valueOf.applyAsLong(item);
+        return true;
+    }
+
+    /** Returns true if the item was tracked. */
+    public boolean remove(T item) {
+        if (!ranked.remove(item))
+            return false;
+        total -= valueOf.applyAsLong(item);
+        return true;
+    }
+
+    /** Returns up to limit items, largest first. */
+    public List<T> getTop() {
+        List<T> result = new ArrayList<>(Math.min(limit, ranked.size()));
+        Iterator<T> it = ranked.iterator();
+        while (result.size() < limit && it.hasNext())
+            result.add(it.next());
+        return result;
+    }
+
+    /** Returns the sum of the values of the items that aren't in {@link #getTop()}. */
+    public long getOthersTotal() {
+        long others = total;
+        for (T item : getTop())
+            others -= valueOf.applyAsLong(item);
+        return others;
+    }
+
+    /** Returns how many items aren't in {@link #getTop()}. */
+    public int getOthersCount() {
+        return Math.max(0, ranked.size() - limit);
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public int size() {
+        return ranked.size();
+    }
+}
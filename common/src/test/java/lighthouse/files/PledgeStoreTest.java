@@ -0,0 +1,128 @@
+package lighthouse.files;
+
+import com.google.common.collect.ImmutableList;
+import lighthouse.protocol.LHProtos;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.*;
+
+public class PledgeStoreTest {
+    private Path dir, path;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("lighthouse-pledgestore");
+        path = dir.resolve(PledgeStore.FILE_NAME);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(path);
+        Files.delete(dir);
+    }
+
+    private static LHProtos.Pledge makePledge(String projectID, long value) {
+        LHProtos.Pledge.Builder pledge = LHProtos.Pledge.newBuilder();
+        pledge.setProjectId(projectID);
+        pledge.setTotalInputValue(value);
+        pledge.setTimestamp(value);
+        return pledge.build();
+    }
+
+    @Test
+    public void addRemoveAndReload() throws Exception {
+        LHProtos.Pledge a = makePledge("a", 10), b = makePledge("a", 20), c = makePledge("b", 30);
+        try (PledgeStore store = new PledgeStore(path)) {
+            assertTrue(store.add(a));
+            assertTrue(store.add(b));
+            assertTrue(store.add(c));
+            assertFalse(store.add(a));
+            assertEquals(ImmutableList.of(a, b), store.getPledges("a"));
+            assertTrue(store.remove(a));
+            assertFalse(store.remove(a));
+            assertEquals(ImmutableList.of(b), store.getPledges("a"));
+        }
+        try (PledgeStore store = new PledgeStore(path)) {
+            assertEquals(ImmutableList.of(b), store.getPledges("a"));
+            assertEquals(ImmutableList.of(c), store.getPledges("b"));
+            assertEquals(ImmutableList.of(), store.getPledges("c"));
+            assertEquals(2, store.size());
+        }
+    }
+
+    @Test
+    public void tornWrite() throws Exception {
+        LHProtos.Pledge a = makePledge("a", 10), b = makePledge("a", 20);
+        try (PledgeStore store = new PledgeStore(path)) {
+            store.add(a);
+            store.add(b);
+        }
+        // Chop the last record in half as if we crashed whilst writing it.
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 5);
+        }
+        try (PledgeStore store = new PledgeStore(path)) {
+            assertEquals(ImmutableList.of(a), store.getPledges("a"));
+            assertTrue(store.add(b));
+        }
+        try (PledgeStore store = new PledgeStore(path)) {
+            assertEquals(ImmutableList.of(a, b), store.getPledges("a"));
+        }
+    }
+
+    @Test
+    public void shortTombstone() throws Exception {
+        LHProtos.Pledge a = makePledge("a", 10), b = makePledge("a", 20);
+        try (PledgeStore store = new PledgeStore(path)) {
+            store.add(a);
+        }
+        // A removal record with a good checksum but too short to hold a pledge hash.
+        byte[] payload = {1, 2, 3};
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        try (DataOutputStream output = new DataOutputStream(Files.newOutputStream(path, StandardOpenOption.APPEND))) {
+            output.writeByte(2);
+            output.writeInt(payload.length);
+            output.write(payload);
+            output.writeInt((int) crc.getValue());
+        }
+        try (PledgeStore store = new PledgeStore(path)) {
+            assertEquals(ImmutableList.of(a), store.getPledges("a"));
+            assertTrue(store.add(b));
+        }
+        try (PledgeStore store = new PledgeStore(path)) {
+            assertEquals(ImmutableList.of(a, b), store.getPledges("a"));
+        }
+    }
+
+    @Test
+    public void compaction() throws Exception {
+        LHProtos.Pledge keep = makePledge("a", 1);
+        long fullSize;
+        try (PledgeStore store = new PledgeStore(path)) {
+            store.add(keep);
+            for (int i = 2; i < 1000; i++)
+                store.add(makePledge("a", i));
+            fullSize = Files.size(path);
+            // Removing half the pledges makes enough garbage to trigger a rewrite.
+            for (int i = 2; i < 502; i++)
+                store.remove(makePledge("a", i));
+            assertTrue(Files.size(path) < fullSize);
+            for (int i = 502; i < 1000; i++)
+                store.remove(makePledge("a", i));
+            assertEquals(ImmutableList.of(keep), store.getPledges("a"));
+        }
+        try (PledgeStore store = new PledgeStore(path)) {
+            assertEquals(ImmutableList.of(keep), store.getPledges("a"));
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package lighthouse.protocol;
+
+import org.bitcoinj.core.*;
+import org.bitcoinj.params.UnitTestParams;
+import org.bitcoinj.utils.BriefLogFormatter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BatchingUTXOSourceTest {
+    private NetworkParameters params = UnitTestParams.get();
+    private ScheduledExecutorService timer;
+    private Map<TransactionOutPoint, TransactionOutput> utxos;
+
+    /** Answers queries from the utxos map after a fixed delay, like a peer on the other end of a slow link. */
+    private class FakeSource {
+        final long latencyMsec;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final List<Integer> querySizes = Collections.synchronizedList(new ArrayList<>());
+        volatile boolean broken;
+
+        FakeSource(long latencyMsec) {
+            this.latencyMsec = latencyMsec;
+        }
+
+        CompletableFuture<UTXOsMessage> query(List<TransactionOutPoint> outPoints) {
+            querySizes.add(outPoints.size());
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            CompletableFuture<UTXOsMessage> future = new CompletableFuture<>();
+            timer.schedule(() -> {
+                inFlight.decrementAndGet();
+                if (broken) {
+                    future.completeExceptionally(new Ex.InconsistentUTXOAnswers());
+                    return;
+                }
+                List<TransactionOutput> outputs = new ArrayList<>();
+                for (TransactionOutPoint outPoint : outPoints)
+                    outputs.add(utxos.get(outPoint));   // Null for a miss.
+                long[] heights = new long[outputs.size()];
+                future.complete(new UTXOsMessage(params, outputs, heights, Sha256Hash.ZERO_HASH, 1));
+            }, latencyMsec, TimeUnit.MILLISECONDS);
+            return future;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        BriefLogFormatter.init();
+        timer = Executors.newScheduledThreadPool(4);
+        utxos = new HashMap<>();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        timer.shutdownNow();
+    }
+
+    // Creates a query for the given number of outpoints, of which every third one is already spent.
+    private List<TransactionOutPoint> makeQuery(int size) {
+        Sha256Hash txHash = Sha256Hash.create(UUID.randomUUID().toString().getBytes());
+        List<TransactionOutPoint> outPoints = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            TransactionOutPoint outPoint = new TransactionOutPoint(params, i, txHash);
+            if (i % 3 != 0)
+                utxos.put(outPoint, new TransactionOutput(params, null, Coin.valueOf(i + 1), new ECKey().toAddress(params)));
+            outPoints.add(outPoint);
+        }
+        return outPoints;
+    }
+
+    private void checkResults(List<List<TransactionOutPoint>> queries,
+                              List<CompletableFuture<List<TransactionOutput>>> futures) throws Exception {
+        for (int i = 0; i < queries.size(); i++) {
+            List<TransactionOutput> expected = new ArrayList<>();
+            for (TransactionOutPoint outPoint : queries.get(i))
+                expected.add(utxos.get(outPoint));   // Null for a miss.
+            assertEquals(expected, futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void smallBatchIsOneQuery() throws Exception {
+        FakeSource source = new FakeSource(0);
+        BatchingUTXOSource batcher = new BatchingUTXOSource(source::query, 100, 4);
+        List<List<TransactionOutPoint>> queries = new ArrayList<>();
+        List<CompletableFuture<List<TransactionOutput>>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            queries.add(makeQuery(i + 1));
+            futures.add(batcher.getUTXOs(queries.get(i)));
+        }
+        batcher.run();
+        checkResults(queries, futures);
+        assertEquals(Collections.singletonList(15), source.querySizes);
+    }
+
+    @Test
+    public void chunkedAndPipelined() throws Exception {
+        FakeSource source = new FakeSource(50);
+        BatchingUTXOSource batcher = new BatchingUTXOSource(source::query, 30, 3);
+        List<List<TransactionOutPoint>> queries = new ArrayList<>();
+        List<CompletableFuture<List<TransactionOutput>>> futures = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            queries.add(makeQuery(10));
+            futures.add(batcher.getUTXOs(queries.get(i)));
+        }
+        // One query that's too big to fit in a chunk on its own.
+        queries.add(makeQuery(45));
+        futures.add(batcher.getUTXOs(queries.get(25)));
+        batcher.run();
+        checkResults(queries, futures);
+        // Queries aren't split up between chunks.
+        assertEquals(Arrays.asList(30, 30, 30, 30, 30, 30, 30, 30, 10, 45), source.querySizes);
+        assertEquals(3, source.maxInFlight.get());
+    }
+
+    @Test
+    public void failureFailsEverything() throws Exception {
+        FakeSource source = new FakeSource(10);
+        source.broken = true;
+        BatchingUTXOSource batcher = new BatchingUTXOSource(source::query, 10, 2);
+        List<CompletableFuture<List<TransactionOutput>>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            futures.add(batcher.getUTXOs(makeQuery(10)));
+        batcher.run();
+        for (CompletableFuture<List<TransactionOutput>> future : futures) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof Ex.InconsistentUTXOAnswers);
+            }
+        }
+        // The chunks that hadn't been sent yet were abandoned.
+        assertEquals(2, source.querySizes.size());
+    }
+
+    @Test
+    public void respectsInFlightLimit() throws Exception {
+        final int numPledges = 2000, outPointsPerPledge = 2;
+        List<List<TransactionOutPoint>> queries = new ArrayList<>();
+        for (int i = 0; i < numPledges; i++)
+            queries.add(makeQuery(outPointsPerPledge));
+        for (int inFlight : new int[]{1, 4}) {
+            FakeSource source = new FakeSource(20);
+            BatchingUTXOSource batcher = new BatchingUTXOSource(source::query, 100, inFlight);
+            List<CompletableFuture<List<TransactionOutput>>> futures = new ArrayList<>();
+            for (List<TransactionOutPoint> query : queries)
+                futures.add(batcher.getUTXOs(query));
+            batcher.run();
+            checkResults(queries, futures);
+            assertEquals(numPledges * outPointsPerPledge / 100, batcher.getQueryCount());
+            assertEquals(batcher.getQueryCount(), source.querySizes.size());
+            // Chunks are sent as soon as there's room, so the limit is reached but never exceeded.
+            assertEquals(inFlight, source.maxInFlight.get());
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package lighthouse.protocol;
+
+import com.google.protobuf.ByteString;
+import lighthouse.wallet.PledgingWallet;
+import org.bitcoinj.core.*;
+import org.bitcoinj.params.UnitTestParams;
+import org.bitcoinj.script.Script;
+import org.bitcoinj.utils.BriefLogFormatter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.stream.Collectors.toList;
+import static lighthouse.protocol.LHUtils.checkedGet;
+import static org.bitcoinj.testing.FakeTxBuilder.createFakeTx;
+import static org.bitcoinj.testing.FakeTxBuilder.roundTripTransaction;
+
+/**
+ * Rough timings of the pledge checking hot paths, kept out of the unit tests because they only log numbers. Run main()
+ * with the test classpath and only compare numbers taken on the same machine. Each case runs a few rounds so the later
+ * ones show the warmed up JIT.
+ */
+public class ProjectBenchmark {
+    private static final Logger log = LoggerFactory.getLogger(ProjectBenchmark.class);
+    private static final int ROUNDS = 3;
+
+    private final NetworkParameters params = UnitTestParams.get();
+    private final LHProtos.ProjectDetails.Builder details;
+    private final LHProtos.Project proto;
+
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    public ProjectBenchmark() throws Exception {
+        PledgingWallet wallet = new PledgingWallet(params);
+        details = Project.makeDetails("Benchmark", "A project with lots of pledges", wallet.freshReceiveAddress(),
+                Coin.COIN, wallet.freshAuthKey(), wallet.getKeychainLookaheadSize());
+        proto = LHProtos.Project.newBuilder().setSerializedPaymentDetails(details.build().toByteString()).build();
+    }
+
+    // Makes a pledge spending numInputs fake outputs, which are put in utxos.
+    private LHProtos.Pledge makePledge(int numInputs, Map<TransactionOutPoint, TransactionOutput> utxos) {
+        Transaction tx = new Transaction(params);
+        for (LHProtos.Output output : details.getOutputsList())
+            tx.addOutput(Coin.valueOf(output.getAmount()), new Script(output.getScript().toByteArray()));
+        ECKey key = new ECKey();
+        long total = 0;
+        for (int i = 0; i < numInputs; i++) {
+            Transaction stub = createFakeTx(params, Coin.CENT, key.toAddress(params));
+            tx.addSignedInput(stub.getOutput(0), key, Transaction.SigHash.ALL, true);
+            utxos.put(tx.getInput(i).getOutpoint(), stub.getOutput(0).duplicateDetached());
+            total += Coin.CENT.value;
+        }
+        tx = roundTripTransaction(params, tx);
+        return LHProtos.Pledge.newBuilder()
+                .addTransactions(ByteString.copyFrom(tx.bitcoinSerialize()))
+                .setTotalInputValue(total)
+                .setTimestamp(Utils.currentTimeSeconds())
+                .setProjectId("abc")
+                .build();
+    }
+
+    private List<LHProtos.Pledge> makePledges(int numPledges, int numInputs, Map<TransactionOutPoint, TransactionOutput> utxos) {
+        List<LHProtos.Pledge> pledges = new ArrayList<>(numPledges);
+        for (int i = 0; i < numPledges; i++)
+            pledges.add(makePledge(numInputs, utxos));
+        return pledges;
+    }
+
+    private static void time(String name, int count, Task task) throws Exception {
+        long start = System.nanoTime();
+        task.run();
+        long msec = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        log.info("{}: {} in {} msec, {}/sec", name, count, msec, count * 1000L / msec);
+    }
+
+    /** Verifying pledges the first time they're seen, and rechecking them once their scripts are known to pass. */
+    public void verification(int numPledges) throws Exception {
+        Map<TransactionOutPoint, TransactionOutput> utxos = new HashMap<>();
+        List<LHProtos.Pledge> pledges = makePledges(numPledges, 1, utxos);
+        UTXOSource source = outPoints -> completedFuture(outPoints.stream().map(utxos::get).collect(toList()));
+        Project project = new Project(proto);
+        for (String round : new String[]{"verify first check", "verify recheck", "verify recheck"}) {
+            time(round, numPledges, () -> {
+                for (LHProtos.Pledge pledge : pledges)
+                    checkedGet(project.verifyPledge(source, pledge));
+            });
+        }
+    }
+
+    /**
+     * Project.fastSanityCheck gets called about three times per pledge in a check cycle. The first call per Project
+     * parses the transaction, the rest come from the cache.
+     */
+    public void sanityCheck(int numPledges) throws Exception {
+        List<LHProtos.Pledge> pledges = makePledges(numPledges, 3, new HashMap<>());
+        for (int i = 0; i < ROUNDS; i++) {
+            Project project = new Project(proto);
+            time("sanity check, parsed", numPledges, () -> {
+                for (LHProtos.Pledge pledge : pledges)
+                    project.fastSanityCheck(pledge);
+            });
+            time("sanity check, cached", numPledges * 2, () -> {
+                for (int j = 0; j < 2; j++)
+                    for (LHProtos.Pledge pledge : pledges)
+                        project.fastSanityCheck(pledge);
+            });
+        }
+    }
+
+    /** A status poll hashes every pledge about three times. Compares hashing from scratch against LHUtils.pledgeHash. */
+    public void pledgeHash(int numPledges) throws Exception {
+        List<LHProtos.Pledge> pledges = makePledges(numPledges, 3, new HashMap<>());
+        for (int i = 0; i < ROUNDS; i++) {
+            time("pledge hash, serialized", numPledges * 3, () -> {
+                for (int j = 0; j < 3; j++)
+                    for (LHProtos.Pledge pledge : pledges)
+                        Sha256Hash.create(pledge.toByteArray());
+            });
+            time("pledge hash, memoized", numPledges * 3, () -> {
+                for (int j = 0; j < 3; j++)
+                    for (LHProtos.Pledge pledge : pledges)
+                        LHUtils.pledgeHash(pledge);
+            });
+        }
+    }
+
+    /** Looks up a project with a big cover image in a map, using a separately parsed copy of it as the key. */
+    public void projectLookups(int lookups) throws Exception {
+        LHProtos.ProjectDetails.Builder withImage = details.clone();
+        withImage.getExtraDetailsBuilder().setCoverImage(ByteString.copyFrom(new byte[500 * 1024]));
+        byte[] bits = LHProtos.Project.newBuilder().setSerializedPaymentDetails(withImage.build().toByteString())
+                .build().toByteArray();
+        Map<Project, Integer> map = new HashMap<>();
+        map.put(new Project(LHProtos.Project.parseFrom(bits)), 1);
+        Project key = new Project(LHProtos.Project.parseFrom(bits));
+        for (int i = 0; i < ROUNDS; i++) {
+            time("project lookups", lookups, () -> {
+                for (int j = 0; j < lookups; j++)
+                    if (map.get(key) == null)
+                        throw new IllegalStateException();
+            });
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        BriefLogFormatter.init();
+        ProjectBenchmark benchmark = new ProjectBenchmark();
+        benchmark.verification(1000);
+        benchmark.sanityCheck(2000);
+        benchmark.pledgeHash(1000);
+        benchmark.projectLookups(100000);
+    }
+}
@@ -14,14 +14,23 @@ import org.bitcoinj.utils.BriefLogFormatter;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
 import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import static java.util.concurrent.CompletableFuture.completedFuture;
 import static lighthouse.protocol.LHUtils.checkedGet;
 import static org.bitcoinj.testing.FakeTxBuilder.createFakeTx;
 import static org.bitcoinj.testing.FakeTxBuilder.roundTripTransaction;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 public class ProjectTest {
@@ -139,6 +148,21 @@ public class ProjectTest {
         checkedGet(project.verifyPledge(outPoints -> completedFuture(EMPTY_LIST), pledge.build()));
     }
 
+    @Test
+    public void missingUTXOReportsOutPoint() throws Exception {
+        // A source that answers with a null entry tells us exactly which input is gone.
+        TxData pledgeTX = makePledge(details, 0.5);
+        LHProtos.Pledge.Builder pledge = pledgeToBuilder(pledgeTX, false);
+        Project project = new Project(projectBuilder.build());
+        List<TransactionOutput> outputs = Collections.singletonList(null);
+        try {
+            checkedGet(project.verifyPledge(outPoints -> completedFuture(outputs), pledge.build()));
+            fail();
+        } catch (Ex.UnknownUTXO e) {
+            assertEquals(ImmutableList.of(pledgeTX.pledge.getInput(0).getOutpoint()), e.missing);
+        }
+    }
+
     @Test(expected = ScriptException.class)
     public void badSignature() throws Exception {
         TxData pledgeTX = makePledge(details, 0.1);
@@ -239,6 +263,70 @@ public class ProjectTest {
         checkedGet(project.verifyPledge(outPoints -> completedFuture(outputs), pledge.build()));
     }
 
+    @Test
+    public void recheckPledge() throws Exception {
+        TxData pledgeTX = makePledge(details, 0.1);
+        LHProtos.Pledge.Builder pledge = pledgeToBuilder(pledgeTX, false);
+        Project project = new Project(projectBuilder.build());
+        List<TransactionOutput> outputs = ImmutableList.of(pledgeTX.fakeStub.getOutput(0).duplicateDetached());
+        checkedGet(project.verifyPledge(outPoints -> completedFuture(outputs), pledge.build()));
+        checkedGet(project.verifyPledge(outPoints -> completedFuture(outputs), pledge.build()));
+        // Having passed once doesn't help when peers give us a different output for the same input.
+        Transaction stub = createFakeTx(params, pledgeTX.fakeStub.getOutput(0).getValue(), new ECKey().toAddress(params));
+        List<TransactionOutput> otherOutputs = ImmutableList.of(stub.getOutput(0).duplicateDetached());
+        try {
+            checkedGet(project.verifyPledge(outPoints -> completedFuture(otherOutputs), pledge.build()));
+            fail();
+        } catch (VerificationException e) {
+            // Expected.
+        }
+    }
+
+    private TxData makeMultiInputPledge(int numInputs, List<TransactionOutput> outputs) {
+        TxData txData = makePledge(details, 0.1);
+        outputs.add(txData.fakeStub.getOutput(0).duplicateDetached());
+        for (int i = 1; i < numInputs; i++) {
+            Transaction stub = createFakeTx(params, Coin.CENT, txData.key.toAddress(params));
+            txData.pledge.addSignedInput(stub.getOutput(0), txData.key, Transaction.SigHash.ALL, true);
+            outputs.add(stub.getOutput(0).duplicateDetached());
+        }
+        txData.pledge = roundTripTransaction(params, txData.pledge);
+        return txData;
+    }
+
+    @Test
+    public void okPledgeParallel() throws Exception {
+        List<TransactionOutput> outputs = new ArrayList<>();
+        TxData pledgeTX = makeMultiInputPledge(4, outputs);
+        LHProtos.Pledge.Builder pledge = pledgeToBuilder(pledgeTX, false);
+        pledge.setTotalInputValue(pledge.getTotalInputValue() + Coin.CENT.longValue() * 3);
+        Project project = new Project(projectBuilder.build());
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            checkedGet(project.verifyPledge(outPoints -> completedFuture(outputs), pledge.build(), pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test(expected = VerificationException.class)
+    public void badPledgeParallel() throws Exception {
+        List<TransactionOutput> outputs = new ArrayList<>();
+        TxData pledgeTX = makeMultiInputPledge(3, outputs);
+        LHProtos.Pledge.Builder pledge = pledgeToBuilder(pledgeTX, false);
+        pledge.setTotalInputValue(pledge.getTotalInputValue() + Coin.CENT.longValue() * 2);
+        // The last input claims to spend an output belonging to somebody else.
+        Transaction stub = createFakeTx(params, Coin.CENT, new ECKey().toAddress(params));
+        outputs.set(2, stub.getOutput(0).duplicateDetached());
+        Project project = new Project(projectBuilder.build());
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            checkedGet(project.verifyPledge(outPoints -> completedFuture(outputs), pledge.build(), pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
     @Test(expected = Ex.ValueMismatch.class)
     public void incompleteContract() throws Exception {
         TxData pledgeTX1 = makePledge(details, 0.1);
@@ -277,6 +365,87 @@ public class ProjectTest {
         Project project = new Project(projectBuilder.build());
         Transaction contract = project.completeContract(ImmutableSet.of(pledge1.build(), pledge2.build()));
         assertEquals(2, contract.getInputs().size());
+        // The cached pledge transactions weren't touched by building the contract.
+        Transaction checked = project.fastSanityCheck(pledge1.build());
+        assertSame(checked, project.fastSanityCheck(pledge1.build()));
+        assertSame(checked, checked.getInput(0).getParentTransaction());
+        assertEquals(pledgeTX1.pledge, checked);
+    }
+
+    @Test
+    public void identity() throws Exception {
+        // Projects are compared and hashed by ID, which avoids going over the cover image each time they're used as
+        // map keys. ProjectBenchmark.projectLookups times this.
+        details.getExtraDetailsBuilder().setCoverImage(ByteString.copyFrom(new byte[500 * 1024]));
+        projectBuilder.setSerializedPaymentDetails(details.build().toByteString());
+        LHProtos.Project proto = projectBuilder.build();
+        Project project1 = new Project(LHProtos.Project.parseFrom(proto.toByteArray()));
+        Project project2 = new Project(LHProtos.Project.parseFrom(proto.toByteArray()));
+        Project other = new Project(details.setMemo("Something else").build());
+        assertEquals(project1, project2);
+        assertEquals(project1.hashCode(), project2.hashCode());
+        assertNotEquals(project1, other);
+
+        Map<Project, Integer> map = new HashMap<>();
+        map.put(project1, 1);
+        map.put(other, 2);
+        assertEquals(1, (int) map.get(project2));
+        assertEquals(2, (int) map.get(new Project(details.build())));
+    }
+
+    @Test
+    public void lazyCoverImage() throws Exception {
+        ByteString image = ByteString.copyFrom(new byte[]{1, 2, 3});
+        details.getExtraDetailsBuilder().setCoverImage(image);
+        projectBuilder.setSerializedPaymentDetails(details.build().toByteString());
+        LHProtos.Project proto = projectBuilder.build();
+        Project eager = new Project(proto);
+        Project lazy = new Project(proto, () -> proto);
+        assertEquals(eager, lazy);
+        assertEquals(image, lazy.getCoverImage());
+        assertEquals(eager.getProto(), lazy.getProto());
+        assertEquals(eager.getID(), Sha256Hash.create(lazy.getProto().toByteArray()).toString());
+    }
+
+    @Test
+    public void lazyCoverImageChanged() throws Exception {
+        // If the project changed in the meantime we neither return the wrong image nor a proto without one, as that
+        // would no longer hash to the ID.
+        details.getExtraDetailsBuilder().setCoverImage(ByteString.copyFrom(new byte[]{1, 2, 3}));
+        LHProtos.Project proto = projectBuilder.setSerializedPaymentDetails(details.build().toByteString()).build();
+        details.getExtraDetailsBuilder().setCoverImage(ByteString.copyFrom(new byte[]{4, 5, 6}));
+        LHProtos.Project changed = projectBuilder.setSerializedPaymentDetails(details.build().toByteString()).build();
+        Project lazy = new Project(proto, () -> changed);
+        assertEquals(new Project(proto).getID(), lazy.getID());
+        try {
+            lazy.getProto();
+            fail();
+        } catch (Ex.ProjectReloadFailed e) {
+            assertEquals(lazy.getID(), e.projectID);
+            assertNull(e.getCause());
+        }
+        try {
+            lazy.getCoverImage();
+            fail();
+        } catch (Ex.ProjectReloadFailed e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void lazyCoverImageUnreadable() throws Exception {
+        details.getExtraDetailsBuilder().setCoverImage(ByteString.copyFrom(new byte[]{1, 2, 3}));
+        LHProtos.Project proto = projectBuilder.setSerializedPaymentDetails(details.build().toByteString()).build();
+        IOException deleted = new IOException("File was deleted");
+        Project lazy = new Project(proto, () -> { throw deleted; });
+        assertEquals(new Project(proto).getID(), lazy.getID());
+        try {
+            lazy.getProto();
+            fail();
+        } catch (Ex.ProjectReloadFailed e) {
+            assertEquals(lazy.getID(), e.projectID);
+            assertSame(deleted, e.getCause());
+        }
     }
 
     @Test
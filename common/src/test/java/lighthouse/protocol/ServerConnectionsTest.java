@@ -0,0 +1,95 @@
+package lighthouse.protocol;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.spongycastle.util.io.Streams;
+
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ServerConnectionsTest {
+    private HttpServer server;
+    private URL url;
+    private final AtomicInteger inFlight = new AtomicInteger(), maxInFlight = new AtomicInteger();
+    private final Set<InetSocketAddress> clients = Collections.synchronizedSet(new HashSet<>());
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 100);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            clients.add(exchange.getRemoteAddress());
+            int now = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(now, Math::max);
+            try {
+                String path = exchange.getRequestURI().getPath();
+                Thread.sleep(path.equals("/slow") ? 2000 : path.equals("/medium") ? 50 : 0);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            inFlight.decrementAndGet();
+            byte[] body = "hello".getBytes();
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        url = new URL("http://localhost:" + server.getAddress().getPort() + "/status");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+    }
+
+    private static String read(HttpURLConnection connection) throws Exception {
+        return new String(Streams.readAll(connection.getInputStream()));
+    }
+
+    @Test
+    public void limitsRequestsPerHost() throws Exception {
+        ServerConnections connections = new ServerConnections(8, 2, 1000, 5000);
+        URL url = new URL(this.url, "/medium");
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            futures.add(connections.execute(url, ServerConnectionsTest::read));
+        for (CompletableFuture<String> future : futures)
+            assertEquals("hello", future.get());
+        assertEquals(2, maxInFlight.get());
+    }
+
+    @Test
+    public void reusesConnections() throws Exception {
+        ServerConnections connections = new ServerConnections(1, 1, 1000, 5000);
+        for (int i = 0; i < 5; i++)
+            assertEquals("hello", connections.execute(url, ServerConnectionsTest::read).get());
+        // Responses that weren't read by the handler are drained, so the connection can still be reused.
+        for (int i = 0; i < 5; i++)
+            assertEquals(200, (int) connections.execute(url, HttpURLConnection::getResponseCode).get());
+        assertEquals(1, clients.size());
+    }
+
+    @Test
+    public void timesOut() throws Exception {
+        ServerConnections connections = new ServerConnections(1, 1, 1000, 500);
+        try {
+            connections.execute(new URL(url, "/slow"), ServerConnectionsTest::read).get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SocketTimeoutException);
+        }
+        // A failed request doesn't hold up the next one.
+        assertEquals("hello", connections.execute(url, ServerConnectionsTest::read).get());
+    }
+}
@@ -0,0 +1,62 @@
+package lighthouse.protocol;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.bitcoinj.core.*;
+import org.bitcoinj.params.UnitTestParams;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class UTXOStatusCacheTest {
+    private NetworkParameters params = UnitTestParams.get();
+    private UTXOStatusCache cache;
+    private TransactionOutPoint outPoint1, outPoint2;
+
+    @Before
+    public void setUp() throws Exception {
+        cache = new UTXOStatusCache();
+        outPoint1 = new TransactionOutPoint(params, 0, Sha256Hash.create(new byte[]{1}));
+        outPoint2 = new TransactionOutPoint(params, 1, Sha256Hash.create(new byte[]{2}));
+    }
+
+    private BloomFilter filter() {
+        return cache.getBloomFilter(Math.max(1, cache.getBloomFilterElementCount()), 0.0001, 0);
+    }
+
+    @Test
+    public void recordAndSpend() throws Exception {
+        assertFalse(cache.isKnown(ImmutableList.of(outPoint1)));
+        assertTrue(cache.record("a", ImmutableList.of(outPoint1), true, 10));
+        assertFalse(cache.record("a", ImmutableList.of(outPoint1), true, 11));   // Already in the filter.
+        assertFalse(cache.record("b", ImmutableList.of(outPoint2), false, 11));
+        assertTrue(cache.isKnown(ImmutableList.of(outPoint1, outPoint2)));
+
+        // Only unspent outpoints are watched for.
+        assertEquals(1, cache.getBloomFilterElementCount());
+        assertTrue(filter().contains(outPoint1.bitcoinSerialize()));
+        assertFalse(filter().contains(outPoint2.bitcoinSerialize()));
+
+        // A transaction spending both only affects the one we thought was unspent.
+        Transaction spend = new Transaction(params);
+        spend.addInput(new TransactionInput(params, spend, new byte[0], outPoint1));
+        spend.addInput(new TransactionInput(params, spend, new byte[0], outPoint2));
+        assertTrue(cache.isSpentBy(spend));
+        assertEquals(ImmutableSet.of("a"), cache.markSpentBy(spend));
+        assertFalse(cache.isSpentBy(spend));
+        assertFalse(cache.isKnown(ImmutableList.of(outPoint1, outPoint2)));
+        assertEquals(0, cache.getBloomFilterElementCount());
+    }
+
+    @Test
+    public void forget() throws Exception {
+        cache.record("a", ImmutableList.of(outPoint1, outPoint2), true, 10);
+        assertEquals(2, cache.getBloomFilterElementCount());
+        cache.forget(ImmutableList.of(outPoint2));
+        assertEquals(1, cache.getBloomFilterElementCount());
+        assertFalse(cache.isKnown(ImmutableList.of(outPoint2)));
+        // Becoming unspent again means the filter has to be updated.
+        assertTrue(cache.record("a", ImmutableList.of(outPoint2), true, 12));
+    }
+}
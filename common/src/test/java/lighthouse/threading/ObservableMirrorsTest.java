@@ -4,12 +4,15 @@ import com.google.common.collect.ImmutableList;
 import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
+import javafx.collections.ObservableMap;
 import javafx.collections.ObservableSet;
+import javafx.collections.SetChangeListener;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.util.LinkedList;
 import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -36,14 +39,49 @@ public class ObservableMirrorsTest {
         gate.waitAndRun();
         assertEquals(0, gate.getTaskQueueSize());
         assertEquals(3, dest.size());
+        // Changes made before the mirror catches up are applied together.
         source.removeAll(ImmutableList.of("alpha", "beta"));
-        assertEquals(2, gate.getTaskQueueSize());
-        gate.waitAndRun();
+        assertEquals(1, gate.getTaskQueueSize());
         gate.waitAndRun();
         assertEquals(1, dest.size());
         assertTrue(dest.contains("delta"));
     }
 
+    @Test
+    public void setChangesCoalesced() throws Exception {
+        ObservableSet<Integer> source = FXCollections.observableSet();
+        ObservableSet<Integer> dest = ObservableMirrors.mirrorSet(source, gate);
+        AtomicInteger destChanges = new AtomicInteger();
+        dest.addListener((SetChangeListener<Integer>) change -> destChanges.incrementAndGet());
+        // 10k mutations, half of which cancel each other out, result in one task and only the net changes.
+        for (int i = 0; i < 5000; i++)
+            source.add(i);
+        for (int i = 0; i < 5000; i += 2)
+            source.remove(i);
+        for (int i = 0; i < 5000; i += 2)
+            source.add(i + 10000);
+        assertEquals(1, gate.getTaskQueueSize());
+        gate.waitAndRun();
+        assertEquals(0, gate.getTaskQueueSize());
+        assertEquals(source, dest);
+        assertEquals(5000, destChanges.get());
+    }
+
+    @Test
+    public void mapChangesCoalesced() throws Exception {
+        ObservableMap<String, Integer> source = FXCollections.observableHashMap();
+        source.put("alpha", 1);
+        ObservableMap<String, Integer> dest = ObservableMirrors.mirrorMap(source, gate);
+        source.put("beta", 1);
+        source.put("beta", 2);
+        source.remove("alpha");
+        source.put("gamma", 1);
+        source.remove("gamma");
+        assertEquals(1, gate.getTaskQueueSize());
+        gate.waitAndRun();
+        assertEquals(source, dest);
+    }
+
     @Test
     public void observableList() throws Exception {
         ObservableList<String> source = FXCollections.observableArrayList();
@@ -0,0 +1,49 @@
+package lighthouse.utils;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableMap;
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class KeyedMapDispatcherTest {
+    @Test
+    public void routesByKey() throws Exception {
+        ObservableMap<String, Integer> map = FXCollections.observableHashMap();
+        map.put("a", 1);
+        KeyedMapDispatcher<String, Integer> dispatcher = new KeyedMapDispatcher<>(map);
+        List<Integer> seenA = new ArrayList<>(), seenB = new ArrayList<>();
+        Object ownerA = new Object(), ownerB = new Object();
+        dispatcher.subscribe("a", ownerA, (owner, value) -> seenA.add(value));
+        dispatcher.subscribe("b", ownerB, (owner, value) -> seenB.add(value));
+        map.put("a", 2);
+        map.put("c", 1);
+        map.put("b", 1);
+        map.remove("a");
+        assertEquals(Arrays.asList(1, 2, null), seenA);
+        assertEquals(Arrays.asList(null, 1), seenB);
+    }
+
+    @Test
+    public void forgetsCollectedOwners() throws Exception {
+        ObservableMap<String, Integer> map = FXCollections.observableHashMap();
+        KeyedMapDispatcher<String, Integer> dispatcher = new KeyedMapDispatcher<>(map);
+        List<Integer> seen = new ArrayList<>();
+        Object owner = new Object();
+        WeakReference<Object> ref = new WeakReference<>(owner);
+        dispatcher.subscribe("a", owner, (o, value) -> seen.add(value));
+        owner = null;
+        for (int i = 0; i < 10 && ref.get() != null; i++)
+            System.gc();
+        assertNull(ref.get());
+        map.put("a", 1);
+        assertEquals(Collections.singletonList(null), seen);
+    }
+}
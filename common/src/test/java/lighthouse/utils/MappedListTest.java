@@ -1,13 +1,17 @@
 package lighthouse.utils;
 
+import com.google.common.collect.ImmutableList;
 import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -79,5 +83,47 @@ public class MappedListTest {
         assertEquals("Hello Bob", change.getAddedSubList().get(0));
     }
 
-    // Could also test permutation here if I could figure out how to actually apply one!
+    @Test
+    public void permute() throws Exception {
+        inputs.addAll("Mike", "Dave", "Katniss");
+        getChange();
+        FXCollections.sort(inputs);
+        ListChangeListener.Change<? extends String> change = getChange();
+        assertTrue(change.wasPermutated());
+        assertEquals(ImmutableList.of("Hello Dave", "Hello Katniss", "Hello Mike"), new ArrayList<>(outputs));
+    }
+
+    private static List<String> names(int from, int to) {
+        List<String> result = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++)
+            result.add("pledge " + i);
+        return result;
+    }
+
+    private static void assertMapped(List<String> source, List<String> mapped) {
+        assertEquals(source.size(), mapped.size());
+        for (int i = 0; i < source.size(); i++)
+            assertEquals("Hello " + source.get(i), mapped.get(i));
+    }
+
+    @Test
+    public void bulkAdds() throws Exception {
+        // Each element should be mapped exactly once however it arrives, and the contents should track the source.
+        AtomicInteger calls = new AtomicInteger();
+        ObservableList<String> source = FXCollections.observableArrayList();
+        MappedList<String, String> mapped = new MappedList<>(source, str -> {
+            calls.incrementAndGet();
+            return "Hello " + str;
+        });
+        source.addAll(names(0, 10000));
+        source.addAll(0, names(10000, 20000));
+        source.addAll(10000, names(20000, 30000));
+        assertEquals(30000, calls.get());
+        assertMapped(source, mapped);
+
+        source.remove(5000, 25000);
+        source.set(0, "Bob");
+        assertEquals(30001, calls.get());
+        assertMapped(source, mapped);
+    }
 }
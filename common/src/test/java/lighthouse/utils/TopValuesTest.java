@@ -0,0 +1,85 @@
+package lighthouse.utils;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.collections.ObservableSet;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TopValuesTest {
+    private TopValues<String> top;
+
+    @Before
+    public void setUp() throws Exception {
+        // Strings are valued by their length and tie broken alphabetically.
+        top = new TopValues<>(2, String::length, Comparator.naturalOrder());
+    }
+
+    @Test
+    public void largestAndOthers() throws Exception {
+        assertEquals(Collections.emptyList(), top.getTop());
+        assertTrue(top.add("aaa"));
+        assertTrue(top.add("b"));
+        assertFalse(top.add("b"));
+        assertEquals(Arrays.asList("aaa", "b"), top.getTop());
+        assertEquals(0, top.getOthersCount());
+        assertEquals(0, top.getOthersTotal());
+
+        top.add("cc");
+        top.add("dd");
+        assertEquals(Arrays.asList("aaa", "cc"), top.getTop());
+        assertEquals(2, top.getOthersCount());
+        assertEquals(3, top.getOthersTotal());
+        assertEquals(8, top.getTotal());
+
+        // Removing one of the top items promotes the next largest.
+        assertTrue(top.remove("aaa"));
+        assertFalse(top.remove("aaa"));
+        assertEquals(Arrays.asList("cc", "dd"), top.getTop());
+        assertEquals(1, top.getOthersCount());
+        assertEquals(1, top.getOthersTotal());
+        assertEquals(3, top.size());
+    }
+
+    @Test
+    public void manyItems() throws Exception {
+        top = new TopValues<>(10, String::length, Comparator.naturalOrder());
+        Random random = new Random(1);
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            char[] chars = new char[1 + random.nextInt(50)];
+            Arrays.fill(chars, 'x');
+            String item = new String(chars) + i;
+            items.add(item);
+            top.add(item);
+        }
+        for (int i = 0; i < 5000; i++)
+            top.remove(items.remove(random.nextInt(items.size())));
+        items.sort(Comparator.comparingInt(String::length).reversed().thenComparing(Comparator.naturalOrder()));
+        assertEquals(items.subList(0, 10), top.getTop());
+        assertEquals(items.stream().skip(10).mapToLong(String::length).sum(), top.getOthersTotal());
+        assertEquals(4990, top.getOthersCount());
+    }
+
+    @Test
+    public void sortedListBinding() throws Exception {
+        ObservableSet<Integer> set = FXCollections.observableSet(5, 1, 3);
+        ObservableList<Integer> list = FXCollections.observableArrayList();
+        MoreBindings.bindSetToSortedList(set, list, Comparator.naturalOrder());
+        assertEquals(Arrays.asList(1, 3, 5), list);
+        set.add(4);
+        set.add(0);
+        set.remove(3);
+        set.remove(7);
+        assertEquals(Arrays.asList(0, 1, 4, 5), list);
+    }
+}
@@ -0,0 +1,84 @@
+package lighthouse.server;
+
+import lighthouse.protocol.LHProtos;
+import lighthouse.protocol.LHUtils;
+import org.bitcoinj.core.Sha256Hash;
+
+import javax.annotation.Nullable;
+import java.util.*;
+
+/**
+ * A record of recent changes to a project's open and claimed pledge sets, used to tell clients what happened since
+ * the version named by their ETag. Not thread safe: ProjectHandler only touches it on the backend thread.
+ */
+class PledgeJournal {
+    public static class Entry {
+        public final long version;
+        public final Sha256Hash hash;
+        public final LHProtos.Pledge pledge;
+        public final boolean added, claimed;
+
+        public Entry(long version, LHProtos.Pledge pledge, boolean added, boolean claimed) {
+            this.version = version;
+            this.hash = LHUtils.hashFromPledge(pledge);
+            this.pledge = pledge;
+            this.added = added;
+            this.claimed = claimed;
+        }
+    }
+
+    /** The net changes between two versions: pledges to drop by hash, then pledges to add. */
+    public static class Delta {
+        public final List<Entry> added;
+        public final List<Sha256Hash> removed;
+
+        public Delta(List<Entry> added, List<Sha256Hash> removed) {
+            this.added = added;
+            this.removed = removed;
+        }
+    }
+
+    private final int maxEntries;
+    private final Deque<Entry> entries = new ArrayDeque<>();
+    // Every pledge change after this version is still in the entries list.
+    private long startVersion;
+
+    public PledgeJournal(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public void record(long version, LHProtos.Pledge pledge, boolean added, boolean claimed) {
+        entries.addLast(new Entry(version, pledge, added, claimed));
+        while (entries.size() > maxEntries)
+            startVersion = entries.removeFirst().version;
+    }
+
+    /** Returns what changed after the given version, or null if the journal doesn't go back that far. */
+    @Nullable
+    public Delta since(long baseVersion) {
+        if (baseVersion < startVersion)
+            return null;
+        // Net out pledges that came and went within the window, separately for each set. A pledge moving from open
+        // to claimed must not cancel out: clients have to drop the open copy and learn about the claimed one, just
+        // as they would from a full status.
+        Map<Sha256Hash, Entry> openAdded = new LinkedHashMap<>(), claimedAdded = new LinkedHashMap<>();
+        Set<Sha256Hash> openRemoved = new LinkedHashSet<>(), claimedRemoved = new LinkedHashSet<>();
+        for (Entry entry : entries) {
+            if (entry.version <= baseVersion)
+                continue;
+            Map<Sha256Hash, Entry> added = entry.claimed ? claimedAdded : openAdded;
+            Set<Sha256Hash> removed = entry.claimed ? claimedRemoved : openRemoved;
+            if (entry.added) {
+                if (!removed.remove(entry.hash))
+                    added.put(entry.hash, entry);
+            } else if (added.remove(entry.hash) == null) {
+                removed.add(entry.hash);
+            }
+        }
+        List<Entry> added = new ArrayList<>(openAdded.values());
+        added.addAll(claimedAdded.values());
+        Set<Sha256Hash> removed = new LinkedHashSet<>(openRemoved);
+        removed.addAll(claimedRemoved);
+        return new Delta(added, new ArrayList<>(removed));
+    }
+}
@@ -30,6 +30,12 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.KeyStore;
 import java.security.SecureRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static lighthouse.LighthouseBackend.Mode.SERVER;
 
@@ -49,6 +55,9 @@ public class PledgeServer {
         OptionSpec<String> netFlag = parser.accepts("net").withRequiredArg().defaultsTo("regtest");
         OptionSpec<Short> portFlag = parser.accepts("port").withRequiredArg().ofType(Short.class).defaultsTo(DEFAULT_LOCALHOST_PORT);
         OptionSpec<String> keystoreFlag = parser.accepts("keystore").withRequiredArg();
+        OptionSpec<Integer> httpThreadsFlag = parser.accepts("http-threads").withRequiredArg().ofType(Integer.class).defaultsTo(0);
+        OptionSpec<Integer> utxoQuorumFlag = parser.accepts("utxo-quorum").withRequiredArg().ofType(Integer.class).defaultsTo(0);
+        OptionSpec<Integer> verifyThreadsFlag = parser.accepts("verify-threads").withRequiredArg().ofType(Integer.class).defaultsTo(0);
         parser.accepts("local-node");
         OptionSet options = parser.parse(args);
 
@@ -98,13 +107,26 @@ public class PledgeServer {
         kit.peerGroup().waitForPeersOfVersion(minPeersSupportingGetUTXO, GetUTXOsMessage.MIN_PROTOCOL_VERSION).get();
         log.info("Found ... starting web server on port {}", portFlag.value(options));
 
-        // This app is mostly single threaded. It handles all requests and state changes on a single thread.
-        // Speed should ideally not be an issue, as the backend blocks only rarely. If it's a problem then
-        // we'll have to split the backend thread from the http server thread.
+        // All state changes happen on a single backend thread. By default HTTP requests are handled there too, which
+        // is simple but means status polls queue up behind UTXO lookups. With --http-threads=N requests are parsed,
+        // authenticated and serialized on a bounded pool of N threads instead, and only hop to the backend thread to
+        // read or change state.
         AffinityExecutor executor = new AffinityExecutor.ServiceAffinityExecutor("server");
-        server.setExecutor(executor);
+        int httpThreads = httpThreadsFlag.value(options);
+        if (httpThreads > 0) {
+            log.info("Handling HTTP requests with {} threads", httpThreads);
+            server.setExecutor(createHttpExecutor(httpThreads));
+        } else {
+            server.setExecutor(executor);
+        }
         LighthouseBackend backend = new LighthouseBackend(SERVER, kit.peerGroup(), kit.chain(), (PledgingWallet) kit.wallet(), executor);
         backend.setMinPeersForUTXOQuery(minPeersSupportingGetUTXO);
+        // By default every peer must answer UTXO queries. With --utxo-quorum=N we only wait for N of them to agree.
+        backend.setUTXOQueryQuorum(utxoQuorumFlag.value(options));
+        // Pledge scripts are checked on the common fork-join pool unless told how many threads to dedicate to it.
+        int verifyThreads = verifyThreadsFlag.value(options);
+        if (verifyThreads > 0)
+            backend.setScriptVerificationPool(new ForkJoinPool(verifyThreads));
         server.createContext(LHUtils.HTTP_PATH_PREFIX, new ProjectHandler(backend));
         server.createContext("/", exchange -> {
             log.warn("404 Not Found: {}", exchange.getRequestURI());
@@ -113,6 +135,24 @@ public class PledgeServer {
         server.start();
     }
 
+    static ExecutorService createHttpExecutor(int threads) {
+        return createHttpExecutor(threads, threads * 64);
+    }
+
+    static ExecutorService createHttpExecutor(int threads, int queueSize) {
+        AtomicInteger counter = new AtomicInteger();
+        // Bound the queue as well as the pool, so a flood of requests is pushed back onto the accept loop rather than
+        // piling up in memory. CallerRunsPolicy makes the HttpServer dispatcher thread handle the overflow itself.
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "http-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
     private static HttpServer createServer(OptionSpec<Short> portFlag, OptionSpec<String> keystoreFlag, OptionSet options) throws Exception {
         if (options.has(keystoreFlag)) {
             // The amount of boilerplate this supposedly lightweight HTTPS server requires is stupid.
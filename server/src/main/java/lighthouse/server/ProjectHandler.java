@@ -1,14 +1,21 @@
 package lighthouse.server;
 
 import org.bitcoinj.core.Sha256Hash;
+import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.io.ByteStreams;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
+import javafx.collections.MapChangeListener;
 import javafx.collections.ObservableMap;
 import javafx.collections.ObservableSet;
+import javafx.collections.SetChangeListener;
 import lighthouse.LighthouseBackend;
 import lighthouse.protocol.LHProtos;
 import lighthouse.protocol.LHUtils;
@@ -17,13 +24,18 @@ import lighthouse.threading.AffinityExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URLDecoder;
+import java.security.SecureRandom;
 import java.security.SignatureException;
 import java.time.Instant;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.google.common.base.Preconditions.checkState;
 import static java.net.HttpURLConnection.*;
@@ -37,12 +49,24 @@ public class ProjectHandler implements HttpHandler {
     // Refuse to read >1mb of data.
     private static final long MAX_REQUEST_SIZE_BYTES = 1024 * 1024;
 
+    // How many pledge changes per project we remember for answering delta requests, and how many removals we are
+    // willing to list in a response header before falling back to sending the full status.
+    private static final int MAX_JOURNAL_ENTRIES = 1000;
+    private static final int MAX_DELTA_REMOVALS = 200;
+
+    // The owner's client re-sends the same signed message on every poll, so remember the ones we already checked
+    // rather than redoing the signature verification each time. Entries expire so the cache can't grow stale forever.
+    private final Cache<String, Boolean> verifiedOwnerSignatures = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .expireAfterWrite(1, TimeUnit.HOURS)
+            .build();
+
     private final LighthouseBackend backend;
     private final AffinityExecutor executor;
     private final ObservableMap<String, LighthouseBackend.ProjectStateInfo> projectStates;
 
-    // This ends up being mostly the same as LighthouseBackend.pledges and exists in case we want to run the web
-    // server in a different thread to the backend in future.
+    // This ends up being mostly the same as LighthouseBackend.pledges. The mirrors are owned by the backend thread:
+    // the web server may run on other threads, in which case it takes a snapshot via the executor.
     public static class PledgeGroup {
         public final ObservableSet<LHProtos.Pledge> open, claimed;
 
@@ -53,11 +77,42 @@ public class ProjectHandler implements HttpHandler {
     }
     private final Map<Project, PledgeGroup> pledges = new HashMap<>();
 
+    // Serialized status responses minus the timestamp, so repeated polling costs a copy instead of rebuilding and
+    // scrubbing every pledge. Each entry records the version of the project it was built from: the version is bumped
+    // on the backend thread whenever the pledge sets or project state change, which makes older entries unusable.
+    private static class CachedStatus {
+        public final long version;
+        public final byte[] bits;
+
+        public CachedStatus(long version, byte[] bits) {
+            this.version = version;
+            this.bits = bits;
+        }
+    }
+    private final Map<String, AtomicLong> statusVersions = new ConcurrentHashMap<>();
+    private final Map<String, CachedStatus> ownerStatuses = new ConcurrentHashMap<>();
+    private final Map<String, CachedStatus> publicStatuses = new ConcurrentHashMap<>();
+    // Versions restart from zero every time the server does, so ETags carry a random per-run prefix as well.
+    private final String etagPrefix = Long.toHexString(new SecureRandom().nextLong());
+
+    // Recent pledge set changes per project, for answering delta requests. Only touched on the backend thread.
+    // Project state changes bump the version too but are not recorded, as every delta carries the current claim info.
+    private final Map<String, PledgeJournal> journals = new HashMap<>();
+
     public ProjectHandler(LighthouseBackend backend) {
         this.backend = backend;
         // This might change in future so alias it to keep assertions simple.
         this.executor = backend.executor;
         this.projectStates = backend.mirrorProjectStates(executor);
+        this.projectStates.addListener((MapChangeListener<String, LighthouseBackend.ProjectStateInfo>) change ->
+                invalidateStatus(change.getKey()));
+    }
+
+    private void invalidateStatus(String projectID) {
+        executor.checkOnThread();
+        AtomicLong version = statusVersions.get(projectID);
+        if (version != null)
+            version.incrementAndGet();
     }
 
     public void sendError(HttpExchange exchange, int code) {
@@ -92,7 +147,7 @@ public class ProjectHandler implements HttpHandler {
     }
 
     private void realHandle(HttpExchange httpExchange) throws Exception {
-        executor.checkOnThread();
+        // Can be on any thread: either the backend thread or one of the HTTP worker threads.
         // Simulate a slow server.
         // Uninterruptibles.sleepUninterruptibly(3, TimeUnit.SECONDS);
 
@@ -117,22 +172,97 @@ public class ProjectHandler implements HttpHandler {
     }
 
     private PledgeGroup getPledgesFor(Project project) {
+        executor.checkOnThread();
         PledgeGroup result = pledges.get(project);
         if (result == null) {
             ObservableSet<LHProtos.Pledge> open = backend.mirrorOpenPledges(project, executor);
             ObservableSet<LHProtos.Pledge> claimed = backend.mirrorClaimedPledges(project, executor);
             result = new PledgeGroup(open, claimed);
             pledges.put(project, result);
+            statusVersions.put(project.getID(), new AtomicLong());
+            journals.put(project.getID(), new PledgeJournal(MAX_JOURNAL_ENTRIES));
+            open.addListener((SetChangeListener<LHProtos.Pledge>) change -> recordChange(project.getID(), change, false));
+            claimed.addListener((SetChangeListener<LHProtos.Pledge>) change -> recordChange(project.getID(), change, true));
         }
         return result;
     }
 
-    private void statusDownload(HttpExchange httpExchange, Project project) throws IOException, SignatureException {
-        LHProtos.ProjectStatus.Builder status = LHProtos.ProjectStatus.newBuilder();
-        status.setId(project.getID());
-        status.setTimestamp(Instant.now().getEpochSecond());
-        status.setValuePledgedSoFar(Database.getInstance().getPledgedValue(project));
+    private void recordChange(String projectID, SetChangeListener.Change<? extends LHProtos.Pledge> change, boolean claimed) {
+        executor.checkOnThread();
+        long version = statusVersions.get(projectID).incrementAndGet();
+        PledgeJournal journal = journals.get(projectID);
+        if (change.wasAdded())
+            journal.record(version, change.getElementAdded(), true, claimed);
+        if (change.wasRemoved())
+            journal.record(version, change.getElementRemoved(), false, claimed);
+    }
+
+    // An immutable copy of the backend state needed to build a status response, so it can be used off-thread.
+    private static class StatusSnapshot {
+        public final List<LHProtos.Pledge> open, claimed;
+        public final LighthouseBackend.ProjectStateInfo info;
+        public final long version;
+
+        public StatusSnapshot(PledgeGroup group, LighthouseBackend.ProjectStateInfo info, long version) {
+            this.open = new ArrayList<>(group.open);
+            this.claimed = new ArrayList<>(group.claimed);
+            this.info = info;
+            this.version = version;
+        }
+    }
+
+    // The net pledge changes between two versions of a project, copied off the backend thread.
+    private static class StatusDelta {
+        public final long version;
+        public final List<PledgeJournal.Entry> added;
+        public final List<Sha256Hash> removed;
+        public final long totalPledged;
+        public final LighthouseBackend.ProjectStateInfo info;
+
+        public StatusDelta(long version, List<PledgeJournal.Entry> added, List<Sha256Hash> removed, long totalPledged,
+                           LighthouseBackend.ProjectStateInfo info) {
+            this.version = version;
+            this.added = added;
+            this.removed = removed;
+            this.totalPledged = totalPledged;
+            this.info = info;
+        }
+    }
+
+    /** Returns what changed since the given version, or null if the journal doesn't go back that far. */
+    @Nullable
+    private StatusDelta getDeltaSince(Project project, long baseVersion) {
+        executor.checkOnThread();
+        getPledgesFor(project);   // Make sure the journal exists.
+        String id = project.getID();
+        long version = statusVersions.get(id).get();
+        if (baseVersion > version)
+            return null;
+        PledgeJournal.Delta delta = journals.get(id).since(baseVersion);
+        if (delta == null || delta.removed.size() > MAX_DELTA_REMOVALS)
+            return null;
+        long totalPledged = backend.getPledgeTotals(project).openValue;
+        return new StatusDelta(version, delta.added, delta.removed, totalPledged, projectStates.get(id));
+    }
+
+    private String etagFor(long version, boolean authenticated) {
+        // The owner and public views of the same version differ, so they mustn't share a tag.
+        return '"' + etagPrefix + '.' + (authenticated ? 'o' : 'p') + version + '"';
+    }
 
+    /** Returns the version named by the given ETag, or -1 if it isn't one of ours or is for the other view. */
+    private long versionFromEtag(String etag, boolean authenticated) {
+        String prefix = '"' + etagPrefix + '.' + (authenticated ? 'o' : 'p');
+        if (!etag.startsWith(prefix) || !etag.endsWith("\"") || etag.length() <= prefix.length() + 1)
+            return -1;
+        try {
+            return Long.parseLong(etag.substring(prefix.length(), etag.length() - 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void statusDownload(HttpExchange httpExchange, Project project) throws IOException, SignatureException {
         boolean authenticated = false;
         String queryParams = httpExchange.getRequestURI().getRawQuery();
         if (queryParams != null && !queryParams.isEmpty()) {
@@ -141,51 +271,133 @@ public class ProjectHandler implements HttpHandler {
             String signature = params.get("sig");
             String message = params.get("msg");
             if (signature != null && message != null) {
-                signature = URLDecoder.decode(signature, "UTF-8");
-                message = URLDecoder.decode(message, "UTF-8");
-                log.info("Attempting to authenticate project owner");
-                project.authenticateOwner(message, signature);   // throws SignatureException
-                log.info("... authenticated OK");
+                // Key on the raw parameters so cache hits don't even need decoding.
+                String cacheKey = project.getID() + '\n' + message + '\n' + signature;
+                if (verifiedOwnerSignatures.getIfPresent(cacheKey) == null) {
+                    signature = URLDecoder.decode(signature, "UTF-8");
+                    message = URLDecoder.decode(message, "UTF-8");
+                    log.info("Attempting to authenticate project owner");
+                    project.authenticateOwner(message, signature);   // throws SignatureException
+                    log.info("... authenticated OK");
+                    verifiedOwnerSignatures.put(cacheKey, true);
+                }
                 authenticated = true;
             }
         }
 
+        final String id = project.getID();
+        final Map<String, CachedStatus> cache = authenticated ? ownerStatuses : publicStatuses;
+        CachedStatus cached = cache.get(id);
+        AtomicLong version = statusVersions.get(id);
+
+        // Clients that polled before send back the ETag they got: if nothing changed we can skip the body entirely,
+        // and if they asked for delta encoding we try to send only what changed since then.
+        final String clientTag = httpExchange.getRequestHeaders().getFirst("If-None-Match");
+        if (clientTag != null && version != null) {
+            final String currentTag = etagFor(version.get(), authenticated);
+            if (clientTag.equals(currentTag)) {
+                httpExchange.getResponseHeaders().set("ETag", currentTag);
+                httpExchange.sendResponseHeaders(HTTP_NOT_MODIFIED, -1);
+                httpExchange.close();
+                return;
+            }
+            final String im = httpExchange.getRequestHeaders().getFirst("A-IM");
+            final long baseVersion = versionFromEtag(clientTag, authenticated);
+            if (baseVersion >= 0 && im != null && im.contains(LHUtils.HTTP_DELTA_IM)) {
+                StatusDelta delta = executor.fetchFrom(() -> getDeltaSince(project, baseVersion));
+                if (delta != null) {
+                    sendDelta(httpExchange, project, delta, authenticated);
+                    return;
+                }
+            }
+        }
+
+        if (cached == null || version == null || cached.version != version.get()) {
+            // Copy what we need out of the backend thread's state, then do the scrubbing and serialization here.
+            StatusSnapshot snapshot = executor.fetchFrom(() -> {
+                PledgeGroup group = getPledgesFor(project);
+                return new StatusSnapshot(group, projectStates.get(id), statusVersions.get(id).get());
+            });
+            cached = new CachedStatus(snapshot.version, buildStatus(project, snapshot, authenticated));
+            // If the project changed whilst we were building, the version check above will reject this next time.
+            cache.put(id, cached);
+        }
+        httpExchange.getResponseHeaders().set("ETag", etagFor(cached.version, authenticated));
+        sendStatus(httpExchange, Instant.now().getEpochSecond(), cached.bits);
+    }
+
+    private void sendDelta(HttpExchange httpExchange, Project project, StatusDelta delta, boolean authenticated) throws IOException {
+        LHProtos.ProjectStatus.Builder status = LHProtos.ProjectStatus.newBuilder();
+        status.setId(project.getID());
+        status.setTimestamp(Instant.now().getEpochSecond());
+        status.setValuePledgedSoFar(delta.totalPledged);
+        for (PledgeJournal.Entry entry : delta.added)
+            status.addPledges(authenticated || entry.claimed ? entry.pledge : scrubPledge(entry.pledge));
+        if (delta.info.claimedBy != null)
+            status.setClaimedBy(ByteString.copyFrom(delta.info.claimedBy.getBytes()));
+        log.info("Replying with delta of {} added and {} removed pledges", delta.added.size(), delta.removed.size());
+        Headers headers = httpExchange.getResponseHeaders();
+        headers.set("ETag", etagFor(delta.version, authenticated));
+        headers.set("IM", LHUtils.HTTP_DELTA_IM);
+        if (!delta.removed.isEmpty())
+            headers.set(LHUtils.HTTP_REMOVED_PLEDGES_HEADER, Joiner.on(',').join(delta.removed));
+        byte[] bits = status.build().toByteArray();
+        httpExchange.sendResponseHeaders(LHUtils.HTTP_IM_USED, bits.length);
+        httpExchange.getResponseBody().write(bits);
+        httpExchange.close();
+    }
+
+    private static LHProtos.Pledge scrubPledge(LHProtos.Pledge pledge) {
+        // Remove transactions so the contract can't be closed by anyone who requests the status.
+        // In future we may wish to optionally relax this constraint so anyone who can observe the project
+        // can prove to themselves the pledges really exist, and the contract can be closed by any user.
+        Sha256Hash origHash = LHUtils.hashFromPledge(pledge);
+        return pledge.toBuilder()
+                .clearTransactions()
+                .setOrigHash(ByteString.copyFrom(origHash.getBytes()))
+                .build();
+    }
+
+    /** Returns the serialized status for the given snapshot with the timestamp left unset. */
+    private byte[] buildStatus(Project project, StatusSnapshot snapshot, boolean authenticated) {
+        LHProtos.ProjectStatus.Builder status = LHProtos.ProjectStatus.newBuilder();
+        status.setId(project.getID());
+
         long totalPledged = 0;
-        PledgeGroup pledgeGroup = getPledgesFor(project);
-        for (LHProtos.Pledge pledge : pledgeGroup.open) {
+        for (LHProtos.Pledge pledge : snapshot.open) {
             log.info("Pledge has {} txns", pledge.getTransactionsCount());
-            if (authenticated) {
-                status.addPledges(pledge);
-            } else {
-                // Remove transactions so the contract can't be closed by anyone who requests the status.
-                // In future we may wish to optionally relax this constraint so anyone who can observe the project
-                // can prove to themselves the pledges really exist, and the contract can be closed by any user.
-                Sha256Hash origHash = LHUtils.hashFromPledge(pledge);
-                LHProtos.Pledge.Builder scrubbedPledge = pledge.toBuilder()
-                        .clearTransactions()
-                        .setOrigHash(ByteString.copyFrom(origHash.getBytes()));
-                status.addPledges(scrubbedPledge);
-            }
+            status.addPledges(authenticated ? pledge : scrubPledge(pledge));
             totalPledged += pledge.getTotalInputValue();
         }
 
         // Include the full contents of claimed pledges always, as by then the contract is visible on the block
         // chain anyway and so the privacy and who-can-claim issues are gone.
-        if (!pledgeGroup.claimed.isEmpty())
-            checkState(pledgeGroup.open.isEmpty());
-        status.addAllPledges(pledgeGroup.claimed);
+        if (!snapshot.claimed.isEmpty())
+            checkState(snapshot.open.isEmpty());
+        status.addAllPledges(snapshot.claimed);
 
-        LighthouseBackend.ProjectStateInfo info = projectStates.get(project.getID());
+        LighthouseBackend.ProjectStateInfo info = snapshot.info;
         if (info.claimedBy != null) {
             status.setClaimedBy(ByteString.copyFrom(info.claimedBy.getBytes()));
         }
 
         status.setValuePledgedSoFar(totalPledged);
-        final LHProtos.ProjectStatus proto = status.build();
-        log.info("Replying with status: {}", proto);
-        byte[] bits = proto.toByteArray();
-        httpExchange.sendResponseHeaders(HTTP_OK, bits.length);
-        httpExchange.getResponseBody().write(bits);
+        // The timestamp is required, so build partial and let sendStatus supply it.
+        final LHProtos.ProjectStatus proto = status.buildPartial();
+        log.info("Built status: {}", proto);
+        return proto.toByteArray();
+    }
+
+    private void sendStatus(HttpExchange httpExchange, long timestamp, byte[] bits) throws IOException {
+        // Protobuf fields may appear on the wire in any order, so the timestamp can simply be written in front of
+        // the cached bytes without reserializing anything.
+        final int field = LHProtos.ProjectStatus.TIMESTAMP_FIELD_NUMBER;
+        httpExchange.sendResponseHeaders(HTTP_OK, CodedOutputStream.computeUInt64Size(field, timestamp) + bits.length);
+        OutputStream out = httpExchange.getResponseBody();
+        CodedOutputStream coded = CodedOutputStream.newInstance(out);
+        coded.writeUInt64(field, timestamp);
+        coded.flush();
+        out.write(bits);
         httpExchange.close();
     }
 
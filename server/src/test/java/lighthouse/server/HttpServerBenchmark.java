@@ -0,0 +1,178 @@
+package lighthouse.server;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.sun.net.httpserver.HttpServer;
+import lighthouse.LighthouseBackend;
+import lighthouse.files.AppDirectory;
+import lighthouse.files.DiskManager;
+import lighthouse.protocol.LHProtos;
+import lighthouse.protocol.LHUtils;
+import lighthouse.protocol.Project;
+import lighthouse.threading.AffinityExecutor;
+import lighthouse.wallet.PledgingWallet;
+import org.bitcoinj.core.BlockChain;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.core.NetworkParameters;
+import org.bitcoinj.core.PeerGroup;
+import org.bitcoinj.params.UnitTestParams;
+import org.bitcoinj.store.MemoryBlockStore;
+import org.bitcoinj.utils.BriefLogFormatter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static lighthouse.LighthouseBackend.Mode.SERVER;
+
+/**
+ * Rough status poll throughput of the server with HTTP requests handled on the backend thread, as by default, against
+ * a pool of worker threads as with --http-threads. Kept out of the unit tests because it only logs numbers. Run main()
+ * with the test classpath and only compare numbers taken on the same machine. The setup is the same as in
+ * ProjectHandlerTest.
+ */
+public class HttpServerBenchmark {
+    private static final Logger log = LoggerFactory.getLogger(HttpServerBenchmark.class);
+    private static final int ROUNDS = 3;
+    private static final int CLIENTS = 8;
+    private static final int POOL_THREADS = 4;
+
+    private final AffinityExecutor.ServiceAffinityExecutor executor;
+    private final LighthouseBackend backend;
+    private final Project project;
+    private final ProjectHandler handler;
+
+    public HttpServerBenchmark() throws Exception {
+        Path tmpDir = Files.createTempDirectory("lighthouse-httpbenchmark");
+        AppDirectory.overrideAppDir(tmpDir);
+        AppDirectory.initAppDir("lhtests");
+
+        NetworkParameters params = UnitTestParams.get();
+        PledgingWallet wallet = new PledgingWallet(params);
+        BlockChain chain = new BlockChain(params, wallet, new MemoryBlockStore(params));
+        // Never started: the project has no pledges, so the backend has nothing to ask the P2P network about.
+        PeerGroup peerGroup = new PeerGroup(params, chain);
+        executor = new AffinityExecutor.ServiceAffinityExecutor("benchmark backend");
+        backend = new LighthouseBackend(SERVER, peerGroup, chain, wallet, new DiskManager(executor, true), executor);
+
+        LHProtos.ProjectDetails.Builder details = Project.makeDetails("Foo", "Bar", wallet.freshReceiveAddress(),
+                Coin.COIN, wallet.freshAuthKey(), wallet.getKeychainLookaheadSize());
+        details.setPaymentUrl(LHUtils.makeServerPath("localhost", "foo"));
+        LHProtos.Project proto = LHProtos.Project.newBuilder()
+                .setSerializedPaymentDetails(details.build().toByteString())
+                .build();
+        project = new Project(proto);
+        Files.write(AppDirectory.dir().resolve("foo" + DiskManager.PROJECT_FILE_EXTENSION), proto.toByteArray());
+        // Wait for the directory watcher to pick the project up.
+        URI uri = project.getPaymentURL();
+        for (int i = 0; i < 100 && backend.getProjectFromURL(uri) == null; i++)
+            Thread.sleep(50);
+        if (backend.getProjectFromURL(uri) == null)
+            throw new IllegalStateException("Project was not loaded");
+        handler = new ProjectHandler(backend);
+    }
+
+    private static void fetchStatus(URL url) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setReadTimeout(10000);
+        if (connection.getResponseCode() != HttpURLConnection.HTTP_OK)
+            throw new IllegalStateException("HTTP " + connection.getResponseCode());
+        try (InputStream stream = connection.getInputStream()) {
+            ByteStreams.toByteArray(stream);
+        }
+    }
+
+    // Serves the handler from the given executor and polls the status from CLIENTS threads at once.
+    private void poll(String name, Executor httpExecutor, int requests) throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 100);
+        server.createContext(LHUtils.HTTP_PATH_PREFIX, handler);
+        server.setExecutor(httpExecutor);
+        server.start();
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            URL url = new URL("http", "localhost", server.getAddress().getPort(), project.getPaymentURL().getPath());
+            fetchStatus(url);
+            long start = System.nanoTime();
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < CLIENTS; i++) {
+                futures.add(clients.submit(() -> {
+                    for (int j = 0; j < requests / CLIENTS; j++)
+                        fetchStatus(url);
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures)
+                future.get();
+            long msec = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            log.info("{}: {} in {} msec, {}/sec", name, requests, msec, requests * 1000L / msec);
+        } finally {
+            clients.shutdownNow();
+            server.stop(0);
+        }
+    }
+
+    /** Status polls with nothing else going on. */
+    public void statusPolls(int requests) throws Exception {
+        ExecutorService pool = PledgeServer.createHttpExecutor(POOL_THREADS);
+        try {
+            for (int i = 0; i < ROUNDS; i++) {
+                poll("status polls, backend thread", executor, requests);
+                poll("status polls, " + POOL_THREADS + " http threads", pool, requests);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Status polls whilst the backend thread is kept busy in slices of the given length, as it is when processing
+     * UTXO answers for lots of pledges.
+     */
+    public void statusPollsWhileBusy(int requests, int sliceMsec) throws Exception {
+        AtomicBoolean busy = new AtomicBoolean(true);
+        Runnable hog = new Runnable() {
+            @Override
+            public void run() {
+                Uninterruptibles.sleepUninterruptibly(sliceMsec, TimeUnit.MILLISECONDS);
+                if (busy.get())
+                    executor.execute(this);
+            }
+        };
+        executor.execute(hog);
+        ExecutorService pool = PledgeServer.createHttpExecutor(POOL_THREADS);
+        try {
+            for (int i = 0; i < ROUNDS; i++) {
+                poll("busy backend, backend thread", executor, requests);
+                poll("busy backend, " + POOL_THREADS + " http threads", pool, requests);
+            }
+        } finally {
+            busy.set(false);
+            pool.shutdownNow();
+        }
+    }
+
+    public void shutdown() throws Exception {
+        executor.service.shutdown();
+        executor.service.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    public static void main(String[] args) throws Exception {
+        BriefLogFormatter.init();
+        // Otherwise delayed ACKs hold every response up by ~40 msec and both setups measure the same stall.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        HttpServerBenchmark benchmark = new HttpServerBenchmark();
+        benchmark.statusPolls(4000);
+        benchmark.statusPollsWhileBusy(800, 20);
+        benchmark.shutdown();
+    }
+}
@@ -0,0 +1,85 @@
+package lighthouse.server;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lighthouse.protocol.LHProtos;
+import lighthouse.protocol.Project;
+import lighthouse.wallet.PledgingWallet;
+import org.bitcoinj.core.Coin;
+import org.bitcoinj.params.UnitTestParams;
+import org.bitcoinj.utils.BriefLogFormatter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rough timings of authenticating the owner's status polls, comparing a hit in ProjectHandler's cache of verified
+ * owner signatures against decoding and verifying the signature every time. Kept out of the unit tests because it only
+ * logs numbers. Run main() with the test classpath and only compare numbers taken on the same machine.
+ */
+public class OwnerSignatureBenchmark {
+    private static final Logger log = LoggerFactory.getLogger(OwnerSignatureBenchmark.class);
+    private static final int ROUNDS = 3;
+
+    private final Project project;
+    // The query parameters as the owner's client sends them, see Project.getServerQueryURL.
+    private final String msg, sig;
+
+    private interface Task {
+        void run() throws Exception;
+    }
+
+    public OwnerSignatureBenchmark() throws Exception {
+        PledgingWallet wallet = new PledgingWallet(UnitTestParams.get());
+        LHProtos.ProjectDetails.Builder details = Project.makeDetails("Benchmark", "An owner polling for status",
+                wallet.freshReceiveAddress(), Coin.COIN, wallet.freshAuthKey(), wallet.getKeychainLookaheadSize());
+        project = new Project(LHProtos.Project.newBuilder().setSerializedPaymentDetails(details.build().toByteString()).build());
+        msg = project.getID();
+        sig = URLEncoder.encode(project.signAsOwner(wallet, msg, null), "UTF-8");
+    }
+
+    private static void time(String name, int count, Task task) throws Exception {
+        long start = System.nanoTime();
+        task.run();
+        long msec = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        log.info("{}: {} in {} msec, {}/sec", name, count, msec, count * 1000L / msec);
+    }
+
+    /** What ProjectHandler.statusDownload does for an owner poll it hasn't seen before, and used to do for every one. */
+    public void verify(int polls) throws Exception {
+        for (int i = 0; i < ROUNDS; i++) {
+            time("owner signature, verified", polls, () -> {
+                for (int j = 0; j < polls; j++)
+                    project.authenticateOwner(URLDecoder.decode(msg, "UTF-8"), URLDecoder.decode(sig, "UTF-8"));
+            });
+        }
+    }
+
+    /** What ProjectHandler.statusDownload does for a repeated owner poll. */
+    public void cacheHit(int polls) throws Exception {
+        // Built the same way as ProjectHandler.verifiedOwnerSignatures.
+        Cache<String, Boolean> verified = CacheBuilder.newBuilder()
+                .maximumSize(1000)
+                .expireAfterWrite(1, TimeUnit.HOURS)
+                .build();
+        verified.put(project.getID() + '\n' + msg + '\n' + sig, true);
+        for (int i = 0; i < ROUNDS; i++) {
+            time("owner signature, cache hit", polls, () -> {
+                for (int j = 0; j < polls; j++) {
+                    if (verified.getIfPresent(project.getID() + '\n' + msg + '\n' + sig) == null)
+                        throw new IllegalStateException();
+                }
+            });
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        BriefLogFormatter.init();
+        OwnerSignatureBenchmark benchmark = new OwnerSignatureBenchmark();
+        benchmark.verify(1000);
+        benchmark.cacheHit(1000000);
+    }
+}
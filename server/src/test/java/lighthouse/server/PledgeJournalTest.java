@@ -0,0 +1,70 @@
+package lighthouse.server;
+
+import lighthouse.protocol.LHProtos;
+import lighthouse.protocol.LHUtils;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.*;
+
+public class PledgeJournalTest {
+    private static LHProtos.Pledge pledge(long value) {
+        return LHProtos.Pledge.newBuilder()
+                .setProjectId("abc")
+                .setTotalInputValue(value)
+                .setTimestamp(value)
+                .build();
+    }
+
+    @Test
+    public void netsOutWithinWindow() throws Exception {
+        PledgeJournal journal = new PledgeJournal(100);
+        LHProtos.Pledge a = pledge(1), b = pledge(2);
+        journal.record(1, a, true, false);
+        journal.record(2, b, true, false);
+        journal.record(3, b, false, false);
+        PledgeJournal.Delta delta = journal.since(0);
+        assertEquals(Collections.singletonList(a), delta.added.stream().map(e -> e.pledge).collect(toList()));
+        assertEquals(Collections.emptyList(), delta.removed);
+        // A client that already saw b only needs to hear that it's gone.
+        delta = journal.since(2);
+        assertEquals(Collections.emptyList(), delta.added);
+        assertEquals(Collections.singletonList(LHUtils.hashFromPledge(b)), delta.removed);
+    }
+
+    @Test
+    public void claimedBetweenDeltas() throws Exception {
+        PledgeJournal journal = new PledgeJournal(100);
+        LHProtos.Pledge a = pledge(1), b = pledge(2);
+        journal.record(1, a, true, false);
+        journal.record(2, b, true, false);
+        // First delta request happens here, at version 2. Then the project is claimed, which moves every open pledge
+        // over to the claimed set: the backend adds to the claimed set before removing from the open set.
+        journal.record(3, a, true, true);
+        journal.record(4, b, true, true);
+        journal.record(5, a, false, false);
+        journal.record(6, b, false, false);
+        PledgeJournal.Delta delta = journal.since(2);
+        // Like a full status, the delta must carry the claimed pledges, having dropped the open copies first.
+        assertEquals(Arrays.asList(a, b), delta.added.stream().map(e -> e.pledge).collect(toList()));
+        assertTrue(delta.added.stream().allMatch(e -> e.claimed));
+        assertEquals(Arrays.asList(LHUtils.hashFromPledge(a), LHUtils.hashFromPledge(b)), delta.removed);
+        // A client starting from scratch just sees claimed pledges.
+        delta = journal.since(0);
+        assertEquals(Arrays.asList(a, b), delta.added.stream().map(e -> e.pledge).collect(toList()));
+        assertEquals(Collections.emptyList(), delta.removed);
+    }
+
+    @Test
+    public void forgetsOldEntries() throws Exception {
+        PledgeJournal journal = new PledgeJournal(2);
+        journal.record(1, pledge(1), true, false);
+        journal.record(2, pledge(2), true, false);
+        journal.record(3, pledge(3), true, false);
+        assertNull(journal.since(0));
+        assertEquals(2, journal.since(1).added.size());
+    }
+}
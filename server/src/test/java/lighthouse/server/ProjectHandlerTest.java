@@ -0,0 +1,198 @@
+package lighthouse.server;
+
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import lighthouse.LighthouseBackend;
+import lighthouse.files.AppDirectory;
+import lighthouse.files.DiskManager;
+import lighthouse.protocol.LHProtos;
+import lighthouse.protocol.LHUtils;
+import lighthouse.protocol.Project;
+import lighthouse.threading.AffinityExecutor;
+import lighthouse.wallet.PledgingWallet;
+import org.bitcoinj.core.*;
+import org.bitcoinj.params.UnitTestParams;
+import org.bitcoinj.store.MemoryBlockStore;
+import org.bitcoinj.utils.BriefLogFormatter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static lighthouse.LighthouseBackend.Mode.SERVER;
+import static org.junit.Assert.*;
+
+public class ProjectHandlerTest {
+    private static final int CLIENTS = 8;
+    private static final int REQUESTS_PER_CLIENT = 25;
+
+    private AffinityExecutor.ServiceAffinityExecutor executor;
+    private PeerGroup peerGroup;
+    private LighthouseBackend backend;
+    private Project project;
+    private HttpServer server;
+    private ExecutorService httpExecutor;
+
+    @Before
+    public void setUp() throws Exception {
+        BriefLogFormatter.init();
+        Path tmpDir = Files.createTempDirectory("lighthouse-handlertest");
+        AppDirectory.overrideAppDir(tmpDir);
+        AppDirectory.initAppDir("lhtests");
+
+        NetworkParameters params = UnitTestParams.get();
+        PledgingWallet wallet = new PledgingWallet(params);
+        BlockChain chain = new BlockChain(params, wallet, new MemoryBlockStore(params));
+        // Never started: the project has no pledges, so the backend has nothing to ask the P2P network about.
+        peerGroup = new PeerGroup(params, chain);
+        executor = new AffinityExecutor.ServiceAffinityExecutor("test backend");
+        backend = new LighthouseBackend(SERVER, peerGroup, chain, wallet, new DiskManager(executor, true), executor);
+
+        LHProtos.ProjectDetails.Builder details = Project.makeDetails("Foo", "Bar", wallet.freshReceiveAddress(),
+                Coin.COIN, wallet.freshAuthKey(), wallet.getKeychainLookaheadSize());
+        details.setPaymentUrl(LHUtils.makeServerPath("localhost", "foo"));
+        LHProtos.Project proto = LHProtos.Project.newBuilder()
+                .setSerializedPaymentDetails(details.build().toByteString())
+                .build();
+        project = new Project(proto);
+        Path path = AppDirectory.dir().resolve("foo" + DiskManager.PROJECT_FILE_EXTENSION);
+        Files.write(path, proto.toByteArray());
+        // Wait for the directory watcher to pick the project up.
+        URI uri = project.getPaymentURL();
+        for (int i = 0; i < 100 && backend.getProjectFromURL(uri) == null; i++)
+            Thread.sleep(50);
+        assertNotNull(backend.getProjectFromURL(uri));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (server != null)
+            server.stop(0);
+        if (httpExecutor != null)
+            httpExecutor.shutdownNow();
+        executor.service.shutdown();
+        executor.service.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private URL startServer(ExecutorService httpExecutor, HttpHandler handler) throws Exception {
+        this.httpExecutor = httpExecutor;
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 100);
+        server.createContext(LHUtils.HTTP_PATH_PREFIX, handler);
+        server.setExecutor(httpExecutor);
+        server.start();
+        return new URL("http", "localhost", server.getAddress().getPort(), project.getPaymentURL().getPath());
+    }
+
+    private LHProtos.ProjectStatus fetchStatus(URL url) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setReadTimeout(10000);
+        assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+        assertNotNull(connection.getHeaderField("ETag"));
+        try (InputStream stream = connection.getInputStream()) {
+            return LHProtos.ProjectStatus.parseFrom(ByteStreams.toByteArray(stream));
+        }
+    }
+
+    @Test
+    public void concurrentStatusRequests() throws Exception {
+        URL url = startServer(PledgeServer.createHttpExecutor(4), new ProjectHandler(backend));
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            List<Future<List<LHProtos.ProjectStatus>>> futures = new ArrayList<>();
+            for (int i = 0; i < CLIENTS; i++) {
+                futures.add(clients.submit(() -> {
+                    List<LHProtos.ProjectStatus> statuses = new ArrayList<>();
+                    for (int j = 0; j < REQUESTS_PER_CLIENT; j++)
+                        statuses.add(fetchStatus(url));
+                    return statuses;
+                }));
+            }
+            int responses = 0;
+            for (Future<List<LHProtos.ProjectStatus>> future : futures) {
+                for (LHProtos.ProjectStatus status : future.get(60, TimeUnit.SECONDS)) {
+                    assertEquals(project.getID(), status.getId());
+                    assertEquals(0, status.getPledgesCount());
+                    assertEquals(0, status.getValuePledgedSoFar());
+                    assertFalse(status.hasClaimedBy());
+                    assertTrue(status.getTimestamp() > 0);
+                    responses++;
+                }
+            }
+            assertEquals(CLIENTS * REQUESTS_PER_CLIENT, responses);
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    /** Holds the first request until released, so the test can fill up the HTTP pool deterministically. */
+    private static class BlockingHandler implements HttpHandler {
+        final ProjectHandler delegate;
+        final CountDownLatch entered = new CountDownLatch(1), release = new CountDownLatch(1);
+        final List<String> threads = new CopyOnWriteArrayList<>();
+
+        BlockingHandler(ProjectHandler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            threads.add(Thread.currentThread().getName());
+            if (entered.getCount() > 0) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            delegate.handle(exchange);
+        }
+    }
+
+    @Test
+    public void saturatedPoolRunsOnCaller() throws Exception {
+        // One worker and room for one queued request: a third request can only be answered by the server's own
+        // dispatcher thread, courtesy of CallerRunsPolicy.
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) PledgeServer.createHttpExecutor(1, 1);
+        BlockingHandler blocker = new BlockingHandler(new ProjectHandler(backend));
+        URL url = startServer(pool, blocker);
+        ExecutorService clients = Executors.newFixedThreadPool(3);
+        try {
+            Future<LHProtos.ProjectStatus> first = clients.submit(() -> fetchStatus(url));
+            assertTrue(blocker.entered.await(10, TimeUnit.SECONDS));
+            Future<LHProtos.ProjectStatus> second = clients.submit(() -> fetchStatus(url));
+            for (int i = 0; i < 200 && pool.getQueue().isEmpty(); i++)
+                Thread.sleep(10);
+            assertEquals(1, pool.getQueue().size());
+            // The only worker is still stuck, yet this one gets answered.
+            LHProtos.ProjectStatus third = clients.submit(() -> fetchStatus(url)).get(10, TimeUnit.SECONDS);
+            assertEquals(project.getID(), third.getId());
+            assertFalse(first.isDone());
+            assertFalse(second.isDone());
+            assertFalse(blocker.threads.get(1).startsWith("http-"));
+
+            blocker.release.countDown();
+            assertEquals(project.getID(), first.get(10, TimeUnit.SECONDS).getId());
+            assertEquals(project.getID(), second.get(10, TimeUnit.SECONDS).getId());
+            assertEquals(3, blocker.threads.size());
+            assertTrue(blocker.threads.get(0).startsWith("http-"));
+            assertTrue(blocker.threads.get(2).startsWith("http-"));
+        } finally {
+            blocker.release.countDown();
+            clients.shutdownNow();
+        }
+    }
+}